@@ -0,0 +1,237 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import com.zelon.designpattern.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+批量观察者：写数据库、写搜索引擎这类观察者批量处理比逐条处理便宜得多。
+主题按观察者缓冲消息，达到数量或者时间阈值后一次性投递；
+如果 keyOf() 返回非 null，同一个 key 的消息在一个批次内只保留最新的一条（合并）。
+ */
+interface BatchObserver {
+    void updateBatch(List<Message> messages);
+
+    // 返回 null 表示不合并
+    default Object keyOf(Message message) {
+        return null;
+    }
+}
+
+// 把批量观察者适配成普通观察者，这样主题原有的同步/异步通知逻辑都不需要改动
+class BatchingObserver implements Observer {
+    // 所有批量观察者共享一个定时线程，只负责按时间阈值触发刷新
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "batch-observer-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BatchObserver delegate;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final BatchMetrics metrics = new BatchMetrics();
+
+    // 缓冲区锁，只保护缓冲区的读写
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    // 投递锁，保证批次按顺序投递
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+    private List<Message> buffer = new ArrayList<>();
+    private Map<Object, Message> coalesced = new LinkedHashMap<>();
+    private int buffered;
+    // 每投递一批加一，定时任务用它判断自己负责的批次是否已经被刷新过了
+    private long generation;
+
+    BatchingObserver(BatchObserver delegate, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("maxDelayMillis must be positive");
+        }
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public void update(Message message) {
+        Object key = delegate.keyOf(message);
+        boolean full;
+        boolean first;
+        long currentGeneration;
+        bufferLock.lock();
+        try {
+            if (key == null) {
+                buffer.add(message);
+                buffered++;
+            } else if (coalesced.put(key, message) == null) {
+                buffered++;
+            } else {
+                metrics.coalesced.increment();
+            }
+            first = buffered == 1;
+            full = buffered >= maxBatchSize;
+            currentGeneration = generation;
+        } finally {
+            bufferLock.unlock();
+        }
+        if (full) {
+            flush();
+        } else if (first) {
+            FLUSH_SCHEDULER.schedule(() -> flushIfGeneration(currentGeneration), maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush() {
+        deliveryLock.lock();
+        try {
+            List<Message> batch = drain();
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    public BatchMetrics getMetrics() {
+        return metrics;
+    }
+
+    // 定时刷新在调度线程中执行，异常如果抛出去会被线程池吞掉，所以只记录在指标中
+    private void flushIfGeneration(long expected) {
+        try {
+            flushGeneration(expected);
+        } catch (RuntimeException e) {
+            // deliver() 已经记录过这次失败
+        }
+    }
+
+    private void flushGeneration(long expected) {
+        deliveryLock.lock();
+        try {
+            List<Message> batch;
+            bufferLock.lock();
+            try {
+                if (generation != expected) {
+                    return;
+                }
+                batch = drainLocked();
+            } finally {
+                bufferLock.unlock();
+            }
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } finally {
+            deliveryLock.unlock();
+        }
+    }
+
+    private List<Message> drain() {
+        bufferLock.lock();
+        try {
+            return drainLocked();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private List<Message> drainLocked() {
+        List<Message> batch = buffer;
+        // 合并过的消息按 key 第一次出现的顺序排在批次末尾
+        if (!coalesced.isEmpty()) {
+            batch.addAll(coalesced.values());
+            coalesced = new LinkedHashMap<>();
+        }
+        buffer = new ArrayList<>(Math.min(maxBatchSize, 1024));
+        buffered = 0;
+        generation++;
+        return batch;
+    }
+
+    // 投递失败时记录到指标中再抛出，由 update()/flush() 的调用方处理
+    private void deliver(List<Message> batch) {
+        long start = System.nanoTime();
+        try {
+            delegate.updateBatch(batch);
+        } catch (RuntimeException e) {
+            metrics.recordFailure(batch.size(), e);
+            throw e;
+        } finally {
+            metrics.record(batch.size(), System.nanoTime() - start);
+        }
+    }
+}
+
+/*
+批量投递的指标：批次大小分布和刷新耗时分布，写入无锁直方图。
+投递失败的批次单独计数，并保留最近一次的异常。
+ */
+class BatchMetrics {
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram flushLatencyMicros = new Histogram();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private volatile RuntimeException lastFailure;
+    final LongAdder coalesced = new LongAdder();
+
+    void record(int batchSize, long latencyNanos) {
+        batches.increment();
+        messages.add(batchSize);
+        batchSizes.record(batchSize);
+        flushLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    void recordFailure(int batchSize, RuntimeException e) {
+        failedBatches.increment();
+        failedMessages.add(batchSize);
+        lastFailure = e;
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getMessageCount() {
+        return messages.sum();
+    }
+
+    // 因为同 key 合并而没有投递的消息数
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    // updateBatch() 抛出异常的批次数和其中的消息数
+    public long getFailedBatchCount() {
+        return failedBatches.sum();
+    }
+
+    public long getFailedMessageCount() {
+        return failedMessages.sum();
+    }
+
+    // 最近一次投递失败的异常，没有失败过时返回 null
+    public RuntimeException getLastFailure() {
+        return lastFailure;
+    }
+
+    public Histogram.Snapshot getBatchSizeHistogram() {
+        return batchSizes.snapshot();
+    }
+
+    public Histogram.Snapshot getFlushLatencyMicrosHistogram() {
+        return flushLatencyMicros.snapshot();
+    }
+}
@@ -0,0 +1,39 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.util.Collections;
+import java.util.List;
+
+// 一次异步通知的结果，记录每个处理失败的观察者，失败之间互不影响
+class NotifyResult {
+    private final List<ObserverFailure> failures;
+
+    NotifyResult(List<ObserverFailure> failures) {
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    public boolean isAllSucceeded() {
+        return failures.isEmpty();
+    }
+
+    public List<ObserverFailure> getFailures() {
+        return failures;
+    }
+}
+
+class ObserverFailure {
+    private final Observer observer;
+    private final Throwable cause;
+
+    ObserverFailure(Observer observer, Throwable cause) {
+        this.observer = observer;
+        this.cause = cause;
+    }
+
+    public Observer getObserver() {
+        return observer;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+}
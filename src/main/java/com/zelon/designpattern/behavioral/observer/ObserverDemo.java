@@ -1,7 +1,17 @@
 package com.zelon.designpattern.behavioral.observer;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /*
 观察者模式
@@ -14,13 +24,29 @@ import java.util.Set;
 1. 同步阻塞
 2. 异步调用
  */
-// 这是一个同步阻塞的实现方式，消息队列则是典型的异步调用方式
+// notifyObservers() 是同步阻塞的实现方式，配置了线程池的 notifyObserversAsync() 是异步非阻塞的实现方式，消息队列则是典型的异步调用方式
 public class ObserverDemo {
     public static void main(String[] args) {
         ConcreteSubject subject = new ConcreteSubject();
         subject.registerObserver(new ConcreteObserverA());
         subject.registerObserver(new ConcreteObserverB());
         subject.notifyObservers(new Message());
+
+        // 异步非阻塞：每个观察者在线程池中独立执行，慢观察者不会拖慢发布者
+        ConcreteSubject asyncSubject = new ConcreteSubject(ObserverExecutors.newVirtualThreadPerTaskExecutor());
+        asyncSubject.registerObserver(new ConcreteObserverA());
+        asyncSubject.registerObserver(new ConcreteObserverB());
+        CompletableFuture<NotifyResult> future = asyncSubject.notifyObserversAsync(new Message());
+        // 需要等待时再 join，否则可以直接返回
+        NotifyResult result = future.join();
+        if (!result.isAllSucceeded()) {
+            System.out.println("部分观察者处理失败：" + result.getFailures().size());
+        }
+        try {
+            asyncSubject.shutdown(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
 
@@ -28,13 +54,34 @@ interface Subject {
     void registerObserver(Observer observer);
     void removeObserver(Observer observer);
     void notifyObservers(Message message);
+    // 异步通知：返回完成句柄，调用方需要时再等待，单个观察者失败不影响其他观察者
+    CompletableFuture<NotifyResult> notifyObserversAsync(Message message);
+    // 有序关闭：不再接收新的异步通知，等待已发出的通知处理完成
+    boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException;
 }
 
 class ConcreteSubject implements Subject{
-    private Set<Observer> observers = new HashSet<>();
+    // 写时复制的注册表，通知过程中注册/移除观察者是安全的
+    private final ObserverRegistry observers = new ObserverRegistry();
+    // 为 null 时为同步阻塞模式，否则观察者在该线程池中执行
+    private final ExecutorService executor;
+    // 正在处理中的异步通知，关闭时需要等待它们完成
+    private final Set<CompletableFuture<NotifyResult>> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown = false;
+    // 批量观察者被包装成普通观察者注册进去，这里记录包装关系以便移除
+    private final Map<BatchObserver, BatchingObserver> batchObservers = new ConcurrentHashMap<>();
+
+    public ConcreteSubject() {
+        this(null);
+    }
+
+    public ConcreteSubject(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     @Override
     public void registerObserver(Observer observer) {
-        observers.add(observer);
+        observers.register(observer);
     }
 
     @Override
@@ -42,13 +89,115 @@ class ConcreteSubject implements Subject{
         observers.remove(observer);
     }
 
+    // 消息按观察者缓冲，攒够 maxBatchSize 条或者第一条消息等待超过 maxDelayMillis 时批量投递
+    public BatchMetrics registerBatchObserver(BatchObserver observer, int maxBatchSize, long maxDelayMillis) {
+        BatchingObserver batching = new BatchingObserver(observer, maxBatchSize, maxDelayMillis);
+        if (batchObservers.putIfAbsent(observer, batching) != null) {
+            throw new IllegalArgumentException("batch observer has already been registered");
+        }
+        observers.register(batching);
+        return batching.getMetrics();
+    }
+
+    // 移除前会先把缓冲中的消息投递出去
+    public void removeBatchObserver(BatchObserver observer) {
+        BatchingObserver batching = batchObservers.remove(observer);
+        if (batching != null) {
+            observers.remove(batching);
+            batching.flush();
+        }
+    }
+
     @Override
     public void notifyObservers(Message message) {
         // todo: 通知所有观察者
-        for (Observer observer : observers) {
+        for (Observer observer : observers.snapshot()) {
             observer.update(message);
         }
     }
+
+    @Override
+    public CompletableFuture<NotifyResult> notifyObserversAsync(Message message) {
+        if (executor == null) {
+            // 同步模式下在调用线程中依次执行，但同样隔离每个观察者的异常
+            List<ObserverFailure> failures = new ArrayList<>();
+            for (Observer observer : observers.snapshot()) {
+                try {
+                    observer.update(message);
+                } catch (Throwable t) {
+                    failures.add(new ObserverFailure(observer, t));
+                }
+            }
+            return CompletableFuture.completedFuture(new NotifyResult(failures));
+        }
+
+        Observer[] snapshot = observers.snapshot();
+        List<CompletableFuture<ObserverFailure>> tasks = new ArrayList<>(snapshot.length);
+        CompletableFuture<NotifyResult> result = new CompletableFuture<>();
+        // 先登记再检查关闭标志，保证 shutdown() 一定能等到已经通过检查的通知
+        inFlight.add(result);
+        if (shutdown) {
+            inFlight.remove(result);
+            throw new RejectedExecutionException("subject has been shut down");
+        }
+        for (Observer observer : snapshot) {
+            // 每个观察者一个任务，异常只记录下来，不向外传播
+            try {
+                tasks.add(CompletableFuture
+                        .runAsync(() -> observer.update(message), executor)
+                        .handle((ignored, t) -> t == null ? null : new ObserverFailure(observer, unwrap(t))));
+            } catch (RejectedExecutionException e) {
+                // 有界线程池已满，或者与 shutdown() 超时后的关闭并发：记为该观察者失败，已提交的任务照常等待
+                tasks.add(CompletableFuture.completedFuture(new ObserverFailure(observer, e)));
+            }
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, t) -> {
+            List<ObserverFailure> failures = new ArrayList<>();
+            for (CompletableFuture<ObserverFailure> task : tasks) {
+                ObserverFailure failure = task.join();
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+            inFlight.remove(result);
+            result.complete(new NotifyResult(failures));
+        });
+        return result;
+    }
+
+    @Override
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        shutdown = true;
+        if (executor == null) {
+            flushBatchObservers();
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = true;
+        CompletableFuture<?>[] pending = inFlight.toArray(new CompletableFuture<?>[0]);
+        try {
+            CompletableFuture.allOf(pending).get(timeout, unit);
+        } catch (TimeoutException e) {
+            drained = false;
+        } catch (ExecutionException e) {
+            // 失败信息已经记录在 NotifyResult 中，这里不会出现
+        }
+        flushBatchObservers();
+        executor.shutdown();
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        return executor.awaitTermination(remaining, TimeUnit.NANOSECONDS) && drained;
+    }
+
+    private void flushBatchObservers() {
+        for (BatchingObserver batching : batchObservers.values()) {
+            batching.flush();
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        // runAsync 的异常会被包装成 CompletionException
+        return t.getCause() != null && t instanceof CompletionException ? t.getCause() : t;
+    }
 }
 
 interface Observer{
@@ -0,0 +1,26 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 异步观察者模式常用的线程池
+class ObserverExecutors {
+    private ObserverExecutors() {}
+
+    public static ExecutorService newFixedThreadPool(int nThreads) {
+        return Executors.newFixedThreadPool(nThreads);
+    }
+
+    /*
+    每个任务一个虚拟线程，观察者大多是 IO 操作时最合适。
+    虚拟线程需要 JDK 21+，项目编译目标是 17，所以通过反射获取，
+    运行在低版本 JDK 上时退化为可伸缩的缓存线程池。
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+观察者注册表：读多写少场景下的写时复制（copy-on-write）实现。
+1. 通知时直接遍历一个不可变的数组快照，不加锁，也不会抛出 ConcurrentModificationException
+2. 注册/移除时复制出新数组，通过 CAS 原子地发布新快照，写操作之间互不覆盖
+3. 数组按注册顺序保存，遍历顺序确定且对 CPU 缓存友好
+ */
+class ObserverRegistry {
+    private static final Observer[] EMPTY = new Observer[0];
+    private final AtomicReference<Observer[]> snapshot = new AtomicReference<>(EMPTY);
+
+    public boolean register(Observer observer) {
+        if (observer == null) {
+            throw new IllegalArgumentException("observer can not be null");
+        }
+        while (true) {
+            Observer[] current = snapshot.get();
+            if (indexOf(current, observer) >= 0) {
+                return false;
+            }
+            Observer[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = observer;
+            if (snapshot.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean remove(Observer observer) {
+        while (true) {
+            Observer[] current = snapshot.get();
+            int index = indexOf(current, observer);
+            if (index < 0) {
+                return false;
+            }
+            Observer[] next;
+            if (current.length == 1) {
+                next = EMPTY;
+            } else {
+                next = new Observer[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+            }
+            if (snapshot.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // 返回的数组不允许修改，调用方只能遍历
+    public Observer[] snapshot() {
+        return snapshot.get();
+    }
+
+    public int size() {
+        return snapshot.get().length;
+    }
+
+    private static int indexOf(Observer[] observers, Observer observer) {
+        for (int i = 0; i < observers.length; i++) {
+            if (observers[i].equals(observer)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,146 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+注册表竞争基准：1、8、64 个发布线程持续遍历观察者，同时一个线程每毫秒注册或移除一次观察者（写操作远少于读操作）。
+原来的 HashSet 在并发修改下会直接抛出 ConcurrentModificationException，
+所以对照组使用 Collections.synchronizedSet 并在遍历时加锁，这是 HashSet 能正确运行的最低代价。
+ */
+public class ObserverRegistryBenchmark {
+    private static final int OBSERVERS = 16;
+    private static final long DURATION_MILLIS = 2000;
+    private static final long WRITE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int threads : new int[]{1, 8, 64}) {
+            System.out.printf("threads=%d synchronized HashSet: %,d notify/s%n", threads, runHashSet(threads));
+            System.out.printf("threads=%d ObserverRegistry:      %,d notify/s%n", threads, runRegistry(threads));
+        }
+    }
+
+    private static long runHashSet(int threads) throws InterruptedException {
+        Set<Observer> observers = Collections.synchronizedSet(new HashSet<>());
+        CountingObserver[] counters = new CountingObserver[OBSERVERS];
+        for (int i = 0; i < OBSERVERS; i++) {
+            counters[i] = new CountingObserver();
+            observers.add(counters[i]);
+        }
+        return run(threads, counters, () -> {
+            synchronized (observers) {
+                for (Observer observer : observers) {
+                    observer.update(null);
+                }
+            }
+        }, new Runnable() {
+            private final Observer churn = new CountingObserver();
+            private boolean added;
+            @Override
+            public void run() {
+                if (added) {
+                    observers.remove(churn);
+                } else {
+                    observers.add(churn);
+                }
+                added = !added;
+            }
+        });
+    }
+
+    private static long runRegistry(int threads) throws InterruptedException {
+        ObserverRegistry observers = new ObserverRegistry();
+        CountingObserver[] counters = new CountingObserver[OBSERVERS];
+        for (int i = 0; i < OBSERVERS; i++) {
+            counters[i] = new CountingObserver();
+            observers.register(counters[i]);
+        }
+        return run(threads, counters, () -> {
+            for (Observer observer : observers.snapshot()) {
+                observer.update(null);
+            }
+        }, new Runnable() {
+            private final Observer churn = new CountingObserver();
+            private boolean added;
+            @Override
+            public void run() {
+                if (added) {
+                    observers.remove(churn);
+                } else {
+                    observers.register(churn);
+                }
+                added = !added;
+            }
+        });
+    }
+
+    private static long run(int threads, CountingObserver[] counters, Runnable notify, Runnable mutate)
+            throws InterruptedException {
+        LongAdder notifies = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        // 所有线程都启动之后才开始计时
+        long[] deadline = new long[1];
+        Thread[] publishers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            publishers[i] = new Thread(() -> {
+                await(start);
+                long count = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    notify.run();
+                    count++;
+                }
+                notifies.add(count);
+            });
+            publishers[i].start();
+        }
+        Thread writer = new Thread(() -> {
+            await(start);
+            while (System.nanoTime() < deadline[0]) {
+                mutate.run();
+                // 写操作远少于读操作
+                LockSupport.parkNanos(WRITE_INTERVAL_NANOS);
+            }
+        });
+        writer.start();
+        long begin = System.nanoTime();
+        // CountDownLatch 保证 deadline 对所有线程可见
+        deadline[0] = begin + TimeUnit.MILLISECONDS.toNanos(DURATION_MILLIS);
+        start.countDown();
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+        writer.join();
+        long elapsed = System.nanoTime() - begin;
+        // 使用观察者的计数结果，避免通知被 JIT 当作无用代码消除
+        long updates = 0;
+        for (CountingObserver counter : counters) {
+            updates += counter.count;
+        }
+        if (updates == 0) {
+            throw new IllegalStateException("observers were never notified");
+        }
+        return notifies.sum() * 1_000_000_000L / elapsed;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingObserver implements Observer {
+        // volatile 写不能被合并或消除；多线程下的自增会丢失部分计数，只用来保证通知确实执行了
+        private volatile long count;
+        @Override
+        public void update(Message message) {
+            count++;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/*
+发件箱追加吞吐基准：8 个线程并发追加并等待落盘，比较不同的组提交批次大小。
+ */
+public class OutboxBenchmark {
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        for (int batch : new int[]{1, 64, 1024}) {
+            Path dir = Files.createTempDirectory("outbox-bench");
+            try (RegisterOutbox outbox = new RegisterOutbox.Builder()
+                    .setDirectory(dir)
+                    .setSyncBatchSize(batch)
+                    .setSyncIntervalMillis(2)
+                    .build()) {
+                int records = batch == 1 ? RECORDS_PER_THREAD / 100 : RECORDS_PER_THREAD;
+                Thread[] threads = new Thread[THREADS];
+                long start = System.nanoTime();
+                for (int t = 0; t < THREADS; t++) {
+                    threads[t] = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < records; i++) {
+                                long recordId = outbox.append(i, 0);
+                                // 每 64 条等待一次落盘，模拟一次注册对应多个处理器
+                                if ((i & 63) == 63) {
+                                    outbox.awaitDurable(recordId);
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("syncBatchSize=%d: %,d appends/s%n", batch, (long) THREADS * records * 1_000_000_000L / elapsed);
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
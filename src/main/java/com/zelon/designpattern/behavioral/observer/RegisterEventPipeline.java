@@ -0,0 +1,445 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+注册事件流水线：参考 Disruptor 的环形缓冲区实现，把 register() 和 RegisterHandler 解耦。
+1. 环形数组中的事件对象在启动前全部创建好，发布事件时只改写槽位中的 userId，热路径上没有对象分配
+2. 生产者、消费者各自维护递增的序号（sequence），通过序号而不是锁来协调读写位置
+3. 支持单生产者/多生产者；消费者等待方式可选：自旋、让出 CPU、park
+4. 缓冲区满时的背压策略可选：阻塞等待、丢弃、快速失败
+5. 同一组的处理器并行消费，通过 then() 声明的后一组处理器要等前一组处理完同一事件后才能消费
+6. 处理器抛出的异常交给 ExceptionHandler，消费者线程继续处理后面的事件
+7. shutdown() 在生产者序号上打关闭标记，之后的发布全部被拒绝，已经申请到序号的事件都会被处理完
+ */
+public class RegisterEventPipeline {
+    public enum ProducerType {
+        SINGLE, MULTI
+    }
+
+    public enum WaitStrategy {
+        // 延迟最低，但会一直占用 CPU
+        BUSY_SPIN {
+            @Override
+            void idle() {
+                Thread.onSpinWait();
+            }
+        },
+        YIELD {
+            @Override
+            void idle() {
+                Thread.yield();
+            }
+        },
+        // 最省 CPU，延迟最高
+        PARK {
+            @Override
+            void idle() {
+                LockSupport.parkNanos(1000L);
+            }
+        };
+
+        abstract void idle();
+    }
+
+    public enum BackpressurePolicy {
+        BLOCK, DROP, FAIL_FAST
+    }
+
+    // 处理器抛出异常时回调，在消费者线程中执行
+    public interface ExceptionHandler {
+        void handleEventException(RuntimeException e, long userId, RegisterHandler handler);
+    }
+
+    // 生产者序号的最高位，设置后不再接受新的发布
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final RegisterEvent[] entries;
+    private final int mask;
+    private final ProducerType producerType;
+    private final WaitStrategy waitStrategy;
+    private final BackpressurePolicy backpressurePolicy;
+    private final ExceptionHandler exceptionHandler;
+    // 单生产者：已发布的最大序号 + 1；多生产者：已申请的最大序号 + 1；
+    // 加 1 保证值非负，关闭后最高位为 CLOSED，通过 claimedSequence() 读取
+    private final Sequence cursor = new Sequence(0);
+    // 多生产者模式下每个槽位被发布时的圈数，用来判断槽位是否真正写完
+    private final AtomicIntegerArray available;
+    private final int indexShift;
+    private final List<Consumer> consumers;
+    // 只有最后一组消费者会限制生产者，前面的组一定比它们快
+    private final Sequence[] gatingSequences;
+    // 单生产者模式下的缓存，避免每次发布都读取消费者序号
+    private long nextValue = Sequence.INITIAL;
+    private long cachedGating = Sequence.INITIAL;
+    private volatile boolean running = false;
+
+    private RegisterEventPipeline(Builder builder) {
+        int bufferSize = builder.bufferSize;
+        this.entries = new RegisterEvent[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = new RegisterEvent();
+        }
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.producerType = builder.producerType;
+        this.waitStrategy = builder.waitStrategy;
+        this.backpressurePolicy = builder.backpressurePolicy;
+        this.exceptionHandler = builder.exceptionHandler;
+        if (producerType == ProducerType.MULTI) {
+            this.available = new AtomicIntegerArray(bufferSize);
+            for (int i = 0; i < bufferSize; i++) {
+                available.set(i, -1);
+            }
+        } else {
+            this.available = null;
+        }
+
+        this.consumers = new ArrayList<>();
+        Sequence[] barrier = new Sequence[0];
+        for (List<RegisterHandler> stage : builder.stages) {
+            Sequence[] stageSequences = new Sequence[stage.size()];
+            for (int i = 0; i < stage.size(); i++) {
+                Consumer consumer = new Consumer(stage.get(i), barrier);
+                consumers.add(consumer);
+                stageSequences[i] = consumer.sequence;
+            }
+            barrier = stageSequences;
+        }
+        this.gatingSequences = barrier;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < consumers.size(); i++) {
+            Thread thread = new Thread(consumers.get(i), "register-handler-" + i);
+            thread.setDaemon(true);
+            consumers.get(i).thread = thread;
+            thread.start();
+        }
+    }
+
+    /*
+    发布一个注册成功事件。
+    返回 false 表示缓冲区已满且背压策略为 DROP；策略为 FAIL_FAST 时抛出 RejectedExecutionException；
+    流水线未启动或已经关闭时抛出 IllegalStateException
+     */
+    public boolean publish(long userId) {
+        if (!running) {
+            throw new IllegalStateException("pipeline is not running");
+        }
+        long sequence = producerType == ProducerType.SINGLE ? nextSingle() : nextMulti();
+        if (sequence < 0) {
+            return false;
+        }
+        entries[(int) sequence & mask].userId = userId;
+        if (producerType == ProducerType.SINGLE) {
+            // 与 shutdown() 设置关闭标记竞争，失败说明事件不会被处理
+            if (!cursor.compareAndSet(sequence, sequence + 1)) {
+                throw new IllegalStateException("pipeline has been shut down");
+            }
+        } else {
+            available.set((int) sequence & mask, (int) (sequence >>> indexShift));
+        }
+        return true;
+    }
+
+    // 缓冲区是否还有空位；只是一个提示，返回 true 之后其他生产者仍然可能先把缓冲区占满
+    public boolean hasCapacity() {
+        long claimed = claimedSequence();
+        return claimed + 1 - entries.length <= minimum(gatingSequences, claimed);
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    // 拒绝之后的发布，等待所有已申请序号的事件被处理完，然后停止消费者线程
+    public void shutdown() throws InterruptedException {
+        long current;
+        do {
+            current = cursor.get();
+        } while ((current & CLOSED) == 0 && !cursor.compareAndSet(current, current | CLOSED));
+        long claimed = (current & ~CLOSED) - 1;
+        // 多生产者模式下已申请的槽位可能还没写完，消费者会等到它们发布后再处理
+        while (minimum(gatingSequences, claimed) < claimed) {
+            waitStrategy.idle();
+        }
+        running = false;
+        for (Consumer consumer : consumers) {
+            if (consumer.thread != null) {
+                consumer.thread.join();
+            }
+        }
+    }
+
+    private long nextSingle() {
+        long next = nextValue + 1;
+        long wrapPoint = next - entries.length;
+        if (wrapPoint > cachedGating) {
+            long gating;
+            while (wrapPoint > (gating = minimum(gatingSequences, nextValue))) {
+                if ((cursor.get() & CLOSED) != 0) {
+                    throw new IllegalStateException("pipeline has been shut down");
+                }
+                if (!onFull()) {
+                    return -1;
+                }
+            }
+            cachedGating = gating;
+        }
+        nextValue = next;
+        return next;
+    }
+
+    private long nextMulti() {
+        while (true) {
+            long stored = cursor.get();
+            if ((stored & CLOSED) != 0) {
+                throw new IllegalStateException("pipeline has been shut down");
+            }
+            long current = stored - 1;
+            long next = current + 1;
+            long wrapPoint = next - entries.length;
+            if (wrapPoint > minimum(gatingSequences, current)) {
+                if (!onFull()) {
+                    return -1;
+                }
+                continue;
+            }
+            if (cursor.compareAndSet(stored, stored + 1)) {
+                return next;
+            }
+        }
+    }
+
+    private boolean onFull() {
+        switch (backpressurePolicy) {
+            case DROP:
+                return false;
+            case FAIL_FAST:
+                throw new RejectedExecutionException("register event buffer is full");
+            default:
+                LockSupport.parkNanos(1000L);
+                return true;
+        }
+    }
+
+    // 生产者已经完整写入的最大序号
+    private long highestPublished(long lowerBound) {
+        long claimed = claimedSequence();
+        if (producerType == ProducerType.SINGLE) {
+            return claimed;
+        }
+        for (long sequence = lowerBound; sequence <= claimed; sequence++) {
+            if (available.get((int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return claimed;
+    }
+
+    private long claimedSequence() {
+        return (cursor.get() & ~CLOSED) - 1;
+    }
+
+    private static long minimum(Sequence[] sequences, long defaultValue) {
+        long minimum = defaultValue;
+        for (Sequence sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+
+    private class Consumer implements Runnable {
+        private final RegisterHandler handler;
+        private final Sequence[] dependencies;
+        private final Sequence sequence = new Sequence();
+        private Thread thread;
+
+        Consumer(RegisterHandler handler, Sequence[] dependencies) {
+            this.handler = handler;
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            while (true) {
+                long upper = highestPublished(next);
+                if (dependencies.length > 0) {
+                    upper = minimum(dependencies, upper);
+                }
+                if (upper < next) {
+                    if (!running) {
+                        return;
+                    }
+                    waitStrategy.idle();
+                    continue;
+                }
+                for (long s = next; s <= upper; s++) {
+                    try {
+                        handler.handleRegisterSuccess(entries[(int) s & mask].userId);
+                    } catch (RuntimeException e) {
+                        // 单个事件处理失败不能让消费者线程退出，否则整条流水线都会卡住
+                        handleException(e, entries[(int) s & mask].userId);
+                    }
+                }
+                sequence.set(upper);
+                next = upper + 1;
+            }
+        }
+
+        private void handleException(RuntimeException e, long userId) {
+            try {
+                exceptionHandler.handleEventException(e, userId, handler);
+            } catch (RuntimeException ignored) {
+                // 异常处理器本身出错也不能让消费者线程退出
+            }
+        }
+    }
+
+    public static class Builder {
+        private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private ProducerType producerType = ProducerType.MULTI;
+        private WaitStrategy waitStrategy = WaitStrategy.PARK;
+        private BackpressurePolicy backpressurePolicy = BackpressurePolicy.BLOCK;
+        // 默认忽略处理器异常，需要告警或重试时自行设置
+        private ExceptionHandler exceptionHandler = (e, userId, handler) -> {};
+        private final List<List<RegisterHandler>> stages = new ArrayList<>();
+
+        public Builder(){}
+
+        public RegisterEventPipeline build() {
+            if (stages.isEmpty()) {
+                throw new IllegalArgumentException("at least one handler is required");
+            }
+            return new RegisterEventPipeline(this);
+        }
+
+        public Builder setBufferSize(int bufferSize) {
+            if (bufferSize <= 0 || Integer.bitCount(bufferSize) != 1) {
+                throw new IllegalArgumentException("bufferSize must be a positive power of 2");
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder setProducerType(ProducerType producerType) {
+            if (producerType == null) {
+                throw new IllegalArgumentException("producerType can not be null");
+            }
+            this.producerType = producerType;
+            return this;
+        }
+
+        public Builder setWaitStrategy(WaitStrategy waitStrategy) {
+            if (waitStrategy == null) {
+                throw new IllegalArgumentException("waitStrategy can not be null");
+            }
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        public Builder setBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            if (backpressurePolicy == null) {
+                throw new IllegalArgumentException("backpressurePolicy can not be null");
+            }
+            this.backpressurePolicy = backpressurePolicy;
+            return this;
+        }
+
+        public Builder setExceptionHandler(ExceptionHandler exceptionHandler) {
+            if (exceptionHandler == null) {
+                throw new IllegalArgumentException("exceptionHandler can not be null");
+            }
+            this.exceptionHandler = exceptionHandler;
+            return this;
+        }
+
+        // 同一组的处理器并行消费
+        public Builder handleEventsWith(RegisterHandler... handlers) {
+            if (!stages.isEmpty()) {
+                throw new IllegalStateException("use then() to add dependent handlers");
+            }
+            return addStage(handlers);
+        }
+
+        // 这一组处理器要等上一组全部处理完同一个事件后才会处理
+        public Builder then(RegisterHandler... handlers) {
+            if (stages.isEmpty()) {
+                throw new IllegalStateException("call handleEventsWith() first");
+            }
+            return addStage(handlers);
+        }
+
+        private Builder addStage(RegisterHandler... handlers) {
+            if (handlers == null || handlers.length == 0) {
+                throw new IllegalArgumentException("handlers can not be empty");
+            }
+            stages.add(List.of(handlers));
+            return this;
+        }
+    }
+}
+
+// 环形缓冲区中的槽位，预先分配，反复复用
+class RegisterEvent {
+    long userId;
+}
+
+// 序号，value 前后各有 56 字节的填充，避免与相邻对象的字段落在同一个缓存行上产生伪共享
+// 父类的字段排在子类字段之前，所以用继承来保证填充的位置
+class SequenceLeftPadding {
+    long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequenceLeftPadding {
+    volatile long value;
+}
+
+class Sequence extends SequenceValue {
+    static final long INITIAL = -1L;
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    Sequence() {
+        this(INITIAL);
+    }
+
+    Sequence(long initialValue) {
+        value = initialValue;
+    }
+
+    long get() {
+        return value;
+    }
+
+    void set(long newValue) {
+        value = newValue;
+    }
+
+    boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+}
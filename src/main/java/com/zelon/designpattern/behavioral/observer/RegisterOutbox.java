@@ -0,0 +1,417 @@
+package com.zelon.designpattern.behavioral.observer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+注册事件本地发件箱（outbox）：userService.createUser() 返回之后、处理器执行之前先把 (userId, handlerId) 落盘，
+进程崩溃后重启时重放还没有确认的记录，避免优惠券、欢迎信等通知丢失。
+1. 只追加写入，按固定记录数切分成多个段文件，每个段文件通过内存映射（mmap）写入，追加时没有系统调用
+2. 组提交：后台线程攒够一批记录或者到达时间间隔后，一次 force() 让这一批追加共享一次 fsync
+3. 处理器执行成功后 ack()，段内记录全部确认且该段不再写入时直接删除段文件，相当于压缩
+4. 确认标记不单独刷盘，崩溃后可能重放少量已经处理过的记录，即至少一次投递，处理器需要保证幂等
+5. 段文件头记录了记录大小和段内记录数，记录号按段内记录数计算，所以重启时配置不一致会直接报错，而不是读错位置
+ */
+public class RegisterOutbox implements Closeable {
+    // 段文件头（16 字节）：int 魔数 | int 记录大小 | int 段内记录数 | int 保留
+    static final int HEADER_SIZE = 16;
+    private static final int MAGIC = 0x4f425831;
+    // 记录格式（16 字节）：int 状态 | int handlerId | long userId，状态最后写入，未写完的记录重启后会被忽略
+    static final int RECORD_SIZE = 16;
+    private static final int STATE_EMPTY = 0;
+    private static final int STATE_PENDING = 1;
+    private static final int STATE_ACKED = 2;
+    private static final String SEGMENT_SUFFIX = ".outbox";
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final int syncBatchSize;
+    private final long syncIntervalNanos;
+    private final ConcurrentHashMap<Long, Segment> segments = new ConcurrentHashMap<>();
+    // 启动时发现的、还有未确认记录的段，按段号排序
+    private final List<Segment> recovered = new ArrayList<>();
+
+    // 追加锁，保护当前段和下一个记录号
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment active;
+    private long nextRecordId;
+
+    // 刷盘状态，awaitDurable() 在 durableCondition 上等待
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncNeeded = syncLock.newCondition();
+    private final Condition durableCondition = syncLock.newCondition();
+    private volatile long durableRecordId = -1;
+    private long lastSyncedSegment;
+    private int unsyncedRecords;
+    private volatile boolean closed = false;
+    private final Thread flusher;
+
+    private RegisterOutbox(Builder builder) throws IOException {
+        this.directory = builder.directory;
+        this.segmentRecords = builder.segmentRecords;
+        this.syncBatchSize = builder.syncBatchSize;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.syncIntervalMillis);
+        Files.createDirectories(directory);
+
+        long lastSegment = recover();
+        // 新记录总是写到新段中，不去续写崩溃前的段
+        this.active = openSegment(lastSegment + 1, true);
+        this.nextRecordId = active.index * segmentRecords;
+        this.lastSyncedSegment = active.index;
+        this.durableRecordId = nextRecordId - 1;
+
+        this.flusher = new Thread(this::flushLoop, "register-outbox-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // 追加一条待投递记录，返回记录号；此时记录已写入页缓存，但不保证已经落盘
+    public long append(long userId, int handlerId) {
+        long recordId;
+        appendLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("outbox has been closed");
+            }
+            int slot = (int) (nextRecordId - active.index * segmentRecords);
+            if (slot == segmentRecords) {
+                rollSegment();
+                slot = 0;
+            }
+            recordId = nextRecordId++;
+            active.pending.incrementAndGet();
+            active.write(slot, userId, handlerId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            appendLock.unlock();
+        }
+
+        syncLock.lock();
+        try {
+            if (++unsyncedRecords >= syncBatchSize) {
+                syncNeeded.signal();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+        return recordId;
+    }
+
+    // 阻塞直到 recordId 及之前的记录都已经 fsync，多个调用方会共享同一次刷盘
+    public void awaitDurable(long recordId) throws InterruptedException {
+        if (durableRecordId >= recordId) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            syncNeeded.signal();
+            // close() 最后会做一次全量刷盘，所以这里不会永远等下去
+            while (durableRecordId < recordId) {
+                durableCondition.await();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // 记录对应的处理器已经执行成功
+    public void ack(long recordId) {
+        Segment segment = segments.get(recordId / segmentRecords);
+        if (segment == null) {
+            return;
+        }
+        int slot = (int) (recordId % segmentRecords);
+        if (segment.markAcked(slot) && segment.pending.decrementAndGet() == 0 && segment.sealed) {
+            segment.delete();
+        }
+    }
+
+    // 重放启动前未确认的记录，调用方投递成功后需要调用 ack()
+    public void replay(OutboxReplayHandler handler) {
+        for (Segment segment : recovered) {
+            for (int slot = 0; slot < segmentRecords; slot++) {
+                if (segment.state(slot) == STATE_PENDING) {
+                    handler.onRecord(segment.index * segmentRecords + slot, segment.userId(slot), segment.handlerId(slot));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            closed = true;
+            syncNeeded.signal();
+        } finally {
+            syncLock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+    }
+
+    private void flushLoop() {
+        while (!closed) {
+            syncLock.lock();
+            try {
+                long waitNanos = syncIntervalNanos;
+                while (!closed && unsyncedRecords < syncBatchSize && waitNanos > 0) {
+                    waitNanos = syncNeeded.awaitNanos(waitNanos);
+                    if (unsyncedRecords > 0 && syncLock.hasWaiters(durableCondition)) {
+                        // 有调用方在等待落盘，不再继续攒批
+                        break;
+                    }
+                }
+                if (unsyncedRecords == 0) {
+                    continue;
+                }
+                unsyncedRecords = 0;
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                syncLock.unlock();
+            }
+            sync();
+        }
+    }
+
+    private void sync() {
+        long upTo;
+        long fromSegment;
+        long toSegment;
+        appendLock.lock();
+        try {
+            upTo = nextRecordId - 1;
+            fromSegment = lastSyncedSegment;
+            toSegment = active.index;
+            lastSyncedSegment = toSegment;
+        } finally {
+            appendLock.unlock();
+        }
+        // 段切换时上一个段可能还有没刷盘的数据，一起刷掉
+        for (long index = fromSegment; index <= toSegment; index++) {
+            Segment segment = segments.get(index);
+            if (segment != null) {
+                segment.buffer.force();
+            }
+        }
+        syncLock.lock();
+        try {
+            if (upTo > durableRecordId) {
+                durableRecordId = upTo;
+            }
+            durableCondition.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // 调用方持有 appendLock
+    private void rollSegment() throws IOException {
+        Segment sealed = active;
+        active = openSegment(sealed.index + 1, true);
+        sealed.sealed = true;
+        if (sealed.pending.get() == 0) {
+            sealed.delete();
+        }
+    }
+
+    private long recover() throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                indexes.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        indexes.sort(null);
+        long lastSegment = -1;
+        for (long index : indexes) {
+            lastSegment = index;
+            Segment segment = openSegment(index, false);
+            segment.sealed = true;
+            int pending = 0;
+            for (int slot = 0; slot < segmentRecords; slot++) {
+                if (segment.state(slot) == STATE_PENDING) {
+                    pending++;
+                }
+            }
+            segment.pending.set(pending);
+            if (pending == 0) {
+                segment.delete();
+            } else {
+                recovered.add(segment);
+            }
+        }
+        return lastSegment;
+    }
+
+    private Segment openSegment(long index, boolean create) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+        long size = HEADER_SIZE + (long) segmentRecords * RECORD_SIZE;
+        MappedByteBuffer buffer;
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // 映射建立之后即使关闭通道也依然有效
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            // 文件比映射长度短时 map() 会把文件扩展，所以要先检查已有文件的大小
+            if (!create && channel.size() != size) {
+                throw new IOException("outbox segment " + path + " has size " + channel.size()
+                        + ", expected " + size + " for segmentRecords " + segmentRecords);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        if (create) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, RECORD_SIZE);
+            buffer.putInt(8, segmentRecords);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != RECORD_SIZE || buffer.getInt(8) != segmentRecords) {
+            throw new IOException("outbox segment " + path + " was written with record size " + buffer.getInt(4)
+                    + " and segmentRecords " + buffer.getInt(8) + ", configured " + RECORD_SIZE + " and " + segmentRecords);
+        }
+        Segment segment = new Segment(index, path, buffer);
+        segments.put(index, segment);
+        return segment;
+    }
+
+    private class Segment {
+        private final long index;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean deleted = new AtomicBoolean();
+        private volatile boolean sealed;
+
+        Segment(long index, Path path, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        void write(int slot, long userId, int handlerId) {
+            int offset = offset(slot);
+            buffer.putLong(offset + 8, userId);
+            buffer.putInt(offset + 4, handlerId);
+            buffer.putInt(offset, STATE_PENDING);
+        }
+
+        boolean markAcked(int slot) {
+            if (state(slot) != STATE_PENDING) {
+                return false;
+            }
+            buffer.putInt(offset(slot), STATE_ACKED);
+            return true;
+        }
+
+        int state(int slot) {
+            return buffer.getInt(offset(slot));
+        }
+
+        int handlerId(int slot) {
+            return buffer.getInt(offset(slot) + 4);
+        }
+
+        long userId(int slot) {
+            return buffer.getLong(offset(slot) + 8);
+        }
+
+        private int offset(int slot) {
+            return HEADER_SIZE + slot * RECORD_SIZE;
+        }
+
+        void delete() {
+            if (!deleted.compareAndSet(false, true)) {
+                return;
+            }
+            segments.remove(index);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                // 删除失败不影响正确性，重启时发现全部已确认会再次删除
+            }
+        }
+    }
+
+    public static class Builder {
+        private static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+        private static final int DEFAULT_SYNC_BATCH_SIZE = 256;
+        private static final long DEFAULT_SYNC_INTERVAL_MILLIS = 10;
+
+        private Path directory;
+        private int segmentRecords = DEFAULT_SEGMENT_RECORDS;
+        private int syncBatchSize = DEFAULT_SYNC_BATCH_SIZE;
+        private long syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+
+        public Builder(){}
+
+        public RegisterOutbox build() throws IOException {
+            if (directory == null) {
+                throw new IllegalArgumentException("directory can not be null");
+            }
+            return new RegisterOutbox(this);
+        }
+
+        public Builder setDirectory(Path directory) {
+            if (directory == null) {
+                throw new IllegalArgumentException("directory can not be null");
+            }
+            this.directory = directory;
+            return this;
+        }
+
+        // 写入段文件头，重启时必须使用相同的值才能恢复已有的段
+        public Builder setSegmentRecords(int segmentRecords) {
+            if (segmentRecords <= 0 || segmentRecords > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE) {
+                throw new IllegalArgumentException("segmentRecords is out of range");
+            }
+            this.segmentRecords = segmentRecords;
+            return this;
+        }
+
+        // 攒够多少条记录触发一次 fsync，设置为 1 表示每条记录都单独刷盘
+        public Builder setSyncBatchSize(int syncBatchSize) {
+            if (syncBatchSize <= 0) {
+                throw new IllegalArgumentException("syncBatchSize must be positive");
+            }
+            this.syncBatchSize = syncBatchSize;
+            return this;
+        }
+
+        // 批次没攒满时，最多等待多久也要刷一次盘
+        public Builder setSyncIntervalMillis(long syncIntervalMillis) {
+            if (syncIntervalMillis <= 0) {
+                throw new IllegalArgumentException("syncIntervalMillis must be positive");
+            }
+            this.syncIntervalMillis = syncIntervalMillis;
+            return this;
+        }
+    }
+}
+
+interface OutboxReplayHandler {
+    void onRecord(long recordId, long userId, int handlerId);
+}
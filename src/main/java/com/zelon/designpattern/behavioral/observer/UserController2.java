@@ -4,29 +4,104 @@ import com.zelon.designpattern.structural.proxy.UserVo;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /*
 第一版的代码如果只有少数的处理事件，且后续不太可能扩展的话，已经满足需求。
 但是如果后续处理逻辑变多，有更多的服务需要处理用户注册事件，则需要创建多个处理类。
 因此，使用观察者模式，将处理逻辑抽离出来，让用户注册事件处理类统一处理。
+流水线的背压策略为 FAIL_FAST 时，register() 在创建用户之前检查缓冲区，已满则直接抛出 RejectedExecutionException，
+这时用户还没有创建；用户创建之后不会再因为缓冲区满而失败：检查之后缓冲区被其他请求占满时，
+这次的处理器退回同步调用（或发件箱），和 DROP 一样，register() 的结果只反映用户是否创建成功。
  */
 public class UserController2 {
     // 依赖注入
     private UserService userService;
     private List<RegisterHandler> registerHandlers = new ArrayList<>();
+    // 设置之后，注册成功事件通过环形缓冲区异步交给处理器，注册接口的耗时不再随处理器数量增长
+    private RegisterEventPipeline registerEventPipeline;
+    // 设置之后，处理器执行前先把 (userId, handlerId) 写入本地发件箱，崩溃重启后可以重放
+    // handlerId 就是处理器在列表中的下标，所以处理器的注册顺序在重启前后必须保持一致
+    private RegisterOutbox registerOutbox;
 
     public void allAllHandlers(List<RegisterHandler> registerHandlers){
         this.registerHandlers.addAll(registerHandlers);
     }
 
+    public void setRegisterEventPipeline(RegisterEventPipeline registerEventPipeline){
+        this.registerEventPipeline = registerEventPipeline;
+    }
+
+    public void setRegisterOutbox(RegisterOutbox registerOutbox){
+        this.registerOutbox = registerOutbox;
+    }
+
+    // 启动时调用，把上次崩溃前没有投递成功的通知重新投递一遍
+    public void replayUndeliveredEvents(){
+        registerOutbox.replay((recordId, userId, handlerId) -> {
+            registerHandlers.get(handlerId).handleRegisterSuccess(userId);
+            registerOutbox.ack(recordId);
+        });
+    }
+
     public Long register(UserVo user) {
+        // 快速失败要发生在创建用户之前，否则调用方看到注册失败，用户却已经存在
+        if (registerEventPipeline != null
+                && registerEventPipeline.getBackpressurePolicy() == RegisterEventPipeline.BackpressurePolicy.FAIL_FAST
+                && !registerEventPipeline.hasCapacity()) {
+            throw new RejectedExecutionException("register event buffer is full");
+        }
         // 后续即便增加了别的处理事件，也只需要添加处理类即可，不需要修改内部代码
         Long userId = userService.createUser(user);
+        // 缓冲区已满（DROP，或者检查之后才被占满的 FAIL_FAST）时退回到同步调用，不能让这次注册漏掉处理器
+        if (registerEventPipeline != null && publish(userId)) {
+            return userId;
+        }
+        if (registerOutbox != null) {
+            handleWithOutbox(userId);
+            return userId;
+        }
         for (RegisterHandler registerHandler : registerHandlers) {
             registerHandler.handleRegisterSuccess(userId);
         }
         return userId;
     }
+
+    private boolean publish(long userId) {
+        try {
+            return registerEventPipeline.publish(userId);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void handleWithOutbox(long userId) {
+        if (registerHandlers.isEmpty()) {
+            return;
+        }
+        long[] recordIds = new long[registerHandlers.size()];
+        for (int i = 0; i < recordIds.length; i++) {
+            recordIds[i] = registerOutbox.append(userId, i);
+        }
+        boolean interrupted = false;
+        try {
+            // 组提交：并发注册的请求共享同一次 fsync
+            registerOutbox.awaitDurable(recordIds[recordIds.length - 1]);
+        } catch (InterruptedException e) {
+            // 用户已经创建成功，处理器仍然要执行，执行完再恢复中断标记
+            interrupted = true;
+        }
+        try {
+            for (int i = 0; i < recordIds.length; i++) {
+                registerHandlers.get(i).handleRegisterSuccess(userId);
+                registerOutbox.ack(recordIds[i]);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
 
 interface RegisterHandler{
@@ -0,0 +1,335 @@
+package com.zelon.designpattern.behavioral.responsibilitychain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+自适应处理器排序：HandlerChain2 中第一个返回 true 的处理器会终止链路，
+所以最常命中、开销最小的处理器越靠前，平均耗时越低。
+1. 采样统计：每 SAMPLE_RATE 个请求抽样一个，记录每个处理器的调用次数、命中次数和耗时，未抽中的请求没有额外开销
+2. 定期重排：按 "期望命中代价 = 平均耗时 / 命中率" 从小到大排序，并满足用户声明的约束：
+   固定（pinned）的处理器保持声明时的位置；before/after 约束通过拓扑排序保证；
+   排在命中率高的处理器后面、一直没有被执行到的处理器没有统计数据，保持在原来前一个处理器的后面
+3. 新顺序写入 volatile 数组后整体替换，正在执行的请求继续使用旧数组，不需要加锁
+ */
+class AdaptiveHandlerOrdering {
+    private static final int SAMPLE_RATE = 16;
+    private static final int MAX_REORDER_EVENTS = 64;
+    // 指数平滑系数，越大越偏向最近一个统计窗口
+    private static final double SMOOTHING = 0.5;
+
+    private final Handler2[] handlers;
+    private final HandlerStats[] stats;
+    private final boolean[] pinned;
+    // after[i] 中的处理器必须排在 i 之后
+    private final List<List<Integer>> after;
+    private final int reorderInterval;
+    // 距离上次重排的抽样请求数，只用来决定重排时机，并发自增丢失几次计数没有影响，所以不用原子操作
+    private int sampledSinceReorder;
+    private final AtomicBoolean reordering = new AtomicBoolean();
+    private final ConcurrentLinkedDeque<ReorderEvent> reorderEvents = new ConcurrentLinkedDeque<>();
+    private volatile int[] order;
+
+    AdaptiveHandlerOrdering(List<Handler2> handlers, List<Handler2> pinnedHandlers,
+                            List<Handler2[]> constraints, int reorderInterval) {
+        this.handlers = handlers.toArray(new Handler2[0]);
+        this.stats = new HandlerStats[this.handlers.length];
+        this.pinned = new boolean[this.handlers.length];
+        this.after = new ArrayList<>();
+        for (int i = 0; i < this.handlers.length; i++) {
+            stats[i] = new HandlerStats();
+            after.add(new ArrayList<>());
+        }
+        for (Handler2 handler : pinnedHandlers) {
+            pinned[indexOf(handler)] = true;
+        }
+        for (Handler2[] constraint : constraints) {
+            after.get(indexOf(constraint[0])).add(indexOf(constraint[1]));
+        }
+        this.reorderInterval = reorderInterval;
+        // 初始顺序：所有处理器得分相同，按声明顺序排列并满足约束
+        int[] declared = new int[this.handlers.length];
+        for (int i = 0; i < declared.length; i++) {
+            declared[i] = i;
+        }
+        this.order = computeOrder(new double[this.handlers.length], declared);
+    }
+
+    public boolean handle() {
+        int[] current = order;
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            for (int index : current) {
+                if (handlers[index].handle()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean handled = false;
+        for (int index : current) {
+            long start = System.nanoTime();
+            boolean hit = handlers[index].handle();
+            stats[index].record(System.nanoTime() - start, hit);
+            if (hit) {
+                handled = true;
+                break;
+            }
+        }
+        if (++sampledSinceReorder >= reorderInterval) {
+            reorder();
+        }
+        return handled;
+    }
+
+    public List<HandlerStatsSnapshot> getHandlerStats() {
+        int[] current = order;
+        List<HandlerStatsSnapshot> snapshots = new ArrayList<>(handlers.length);
+        for (int position = 0; position < current.length; position++) {
+            int index = current[position];
+            HandlerStats s = stats[index];
+            snapshots.add(new HandlerStatsSnapshot(handlers[index], position, pinned[index],
+                    s.invocations.sum(), s.hits.sum(), s.totalNanos.sum(), s.score));
+        }
+        return snapshots;
+    }
+
+    public List<ReorderEvent> getReorderEvents() {
+        return new ArrayList<>(reorderEvents);
+    }
+
+    public List<Handler2> getCurrentOrder() {
+        return toHandlers(order);
+    }
+
+    private void reorder() {
+        if (!reordering.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (sampledSinceReorder < reorderInterval) {
+                return;
+            }
+            sampledSinceReorder = 0;
+            int[] previous = order;
+            double[] scores = new double[handlers.length];
+            int[] rank = new int[handlers.length];
+            // 没有统计数据的处理器沿用原来前一个处理器的得分，得分相同时按原来的位置排序，所以它会留在前一个处理器后面
+            double carried = 0;
+            for (int position = 0; position < previous.length; position++) {
+                int index = previous[position];
+                rank[index] = position;
+                double score = stats[index].updateScore();
+                if (pinned[index]) {
+                    continue;
+                }
+                if (Double.isNaN(score)) {
+                    scores[index] = carried;
+                } else {
+                    scores[index] = score;
+                    carried = score;
+                }
+            }
+            int[] next = computeOrder(scores, rank);
+            if (!Arrays.equals(previous, next)) {
+                order = next;
+                reorderEvents.addLast(new ReorderEvent(System.currentTimeMillis(), toHandlers(previous), toHandlers(next)));
+                while (reorderEvents.size() > MAX_REORDER_EVENTS) {
+                    reorderEvents.pollFirst();
+                }
+            }
+        } finally {
+            reordering.set(false);
+        }
+    }
+
+    // 拓扑排序，每次从可选的处理器中选得分最小的，得分相同时按 rank 排序
+    private int[] computeOrder(double[] scores, int[] rank) {
+        int n = handlers.length;
+        int[] inDegree = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int successor : after.get(i)) {
+                inDegree[successor]++;
+            }
+        }
+        boolean[] done = new boolean[n];
+        int[] free = new int[n];
+        int freeCount = 0;
+        for (int step = 0; step < n; step++) {
+            int best = -1;
+            for (int i = 0; i < n; i++) {
+                if (done[i] || pinned[i] || inDegree[i] > 0) {
+                    continue;
+                }
+                if (best < 0 || scores[i] < scores[best] || (scores[i] == scores[best] && rank[i] < rank[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            done[best] = true;
+            free[freeCount++] = best;
+            for (int successor : after.get(best)) {
+                inDegree[successor]--;
+            }
+        }
+
+        // 固定的处理器放回声明时的位置，其余位置依次填入排序结果
+        int[] result = new int[n];
+        int next = 0;
+        for (int position = 0; position < n; position++) {
+            result[position] = pinned[position] ? position : free[next++];
+        }
+        return result;
+    }
+
+    private int indexOf(Handler2 handler) {
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i] == handler) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("handler is not in the chain");
+    }
+
+    private List<Handler2> toHandlers(int[] indexes) {
+        List<Handler2> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            result.add(handlers[index]);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static class HandlerStats {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        // 以下字段只在重排线程中读写
+        private long lastInvocations;
+        private long lastHits;
+        private long lastNanos;
+        private double hitRate = -1;
+        private double avgNanos;
+        private volatile double score = Double.NaN;
+
+        void record(long nanos, boolean hit) {
+            invocations.increment();
+            totalNanos.add(nanos);
+            if (hit) {
+                hits.increment();
+            }
+        }
+
+        // 用最近一个窗口的数据平滑更新命中率和平均耗时，返回期望命中代价；从来没有被执行过时返回 NaN
+        double updateScore() {
+            long invocationsNow = invocations.sum();
+            long hitsNow = hits.sum();
+            long nanosNow = totalNanos.sum();
+            long windowInvocations = invocationsNow - lastInvocations;
+            if (windowInvocations > 0) {
+                double windowHitRate = (double) (hitsNow - lastHits) / windowInvocations;
+                double windowAvgNanos = (double) (nanosNow - lastNanos) / windowInvocations;
+                if (hitRate < 0) {
+                    hitRate = windowHitRate;
+                    avgNanos = windowAvgNanos;
+                } else {
+                    hitRate = SMOOTHING * windowHitRate + (1 - SMOOTHING) * hitRate;
+                    avgNanos = SMOOTHING * windowAvgNanos + (1 - SMOOTHING) * avgNanos;
+                }
+            }
+            lastInvocations = invocationsNow;
+            lastHits = hitsNow;
+            lastNanos = nanosNow;
+            if (hitRate >= 0) {
+                score = hitRate > 0 ? avgNanos / hitRate : Double.MAX_VALUE;
+            }
+            return score;
+        }
+    }
+}
+
+// 处理器统计快照，调用次数、命中次数和耗时都是抽样数据
+class HandlerStatsSnapshot {
+    private final Handler2 handler;
+    private final int position;
+    private final boolean pinned;
+    private final long sampledInvocations;
+    private final long sampledHits;
+    private final long sampledNanos;
+    private final double expectedCostToHit;
+
+    HandlerStatsSnapshot(Handler2 handler, int position, boolean pinned, long sampledInvocations,
+                         long sampledHits, long sampledNanos, double expectedCostToHit) {
+        this.handler = handler;
+        this.position = position;
+        this.pinned = pinned;
+        this.sampledInvocations = sampledInvocations;
+        this.sampledHits = sampledHits;
+        this.sampledNanos = sampledNanos;
+        this.expectedCostToHit = expectedCostToHit;
+    }
+
+    public Handler2 getHandler() {
+        return handler;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean isPinned() {
+        return pinned;
+    }
+
+    public long getSampledInvocations() {
+        return sampledInvocations;
+    }
+
+    public long getSampledHits() {
+        return sampledHits;
+    }
+
+    public double getHitRate() {
+        return sampledInvocations == 0 ? 0 : (double) sampledHits / sampledInvocations;
+    }
+
+    public double getAvgCostNanos() {
+        return sampledInvocations == 0 ? 0 : (double) sampledNanos / sampledInvocations;
+    }
+
+    // 还没有统计数据时为 NaN
+    public double getExpectedCostToHit() {
+        return expectedCostToHit;
+    }
+}
+
+class ReorderEvent {
+    private final long timestampMillis;
+    private final List<Handler2> previousOrder;
+    private final List<Handler2> newOrder;
+
+    ReorderEvent(long timestampMillis, List<Handler2> previousOrder, List<Handler2> newOrder) {
+        this.timestampMillis = timestampMillis;
+        this.previousOrder = previousOrder;
+        this.newOrder = newOrder;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public List<Handler2> getPreviousOrder() {
+        return previousOrder;
+    }
+
+    public List<Handler2> getNewOrder() {
+        return newOrder;
+    }
+}
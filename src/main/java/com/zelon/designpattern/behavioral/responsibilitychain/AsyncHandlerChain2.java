@@ -0,0 +1,128 @@
+package com.zelon.designpattern.behavioral.responsibilitychain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+非阻塞的责任链：处理器中如果有限流、黑名单等远程调用，同步的 boolean 接口会让每个请求都占住一个线程等待。
+这里每个处理器返回 CompletableFuture<Boolean>，上一个处理器的结果回来之后才在回调中调用下一个处理器，
+整条链路不阻塞任何线程。
+1. 每个处理器可以单独设置超时，整条链路也可以设置总超时，超时后链路以 TimeoutException 失败
+2. 某个处理器处理了请求，或者链路超时/失败后，后面的处理器不会再被调用，正在等待的处理器结果会被取消
+3. 处理器返回的 future 可能被多个请求共享，超时和取消都作用在链路自己的副本上，不影响处理器返回的 future
+4. 已经完成的处理器结果在循环中直接处理，只有真正异步的处理器才注册回调，长链路不会因为回调递归而栈溢出
+ */
+public class AsyncHandlerChain2 {
+    private final List<AsyncHandler2> handlers = new ArrayList<>();
+    private final List<Long> handlerTimeoutMillis = new ArrayList<>();
+    // 小于等于 0 表示不限制
+    private long chainTimeoutMillis;
+
+    public void addHandler(AsyncHandler2 handler){
+        addHandler(handler, 0);
+    }
+
+    public void addHandler(AsyncHandler2 handler, long timeoutMillis){
+        if(handler == null){
+            throw new IllegalArgumentException("handler can not be null");
+        }
+        handlers.add(handler);
+        handlerTimeoutMillis.add(timeoutMillis);
+    }
+
+    public void setChainTimeoutMillis(long chainTimeoutMillis){
+        this.chainTimeoutMillis = chainTimeoutMillis;
+    }
+
+    // 返回 true 表示有处理器处理了请求，false 表示所有处理器都没有处理
+    public CompletableFuture<Boolean> handle(){
+        Execution execution = new Execution();
+        if(chainTimeoutMillis > 0){
+            execution.result.orTimeout(chainTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        // 链路结束（处理完成、超时或失败）后取消还在执行的处理器
+        execution.result.whenComplete((handled, error) -> {
+            CompletableFuture<Boolean> current = execution.current.get();
+            if(current != null){
+                current.cancel(true);
+            }
+        });
+        execution.next(0);
+        return execution.result;
+    }
+
+    private class Execution {
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private final AtomicReference<CompletableFuture<Boolean>> current = new AtomicReference<>();
+
+        void next(int index){
+            for(; ; index++){
+                if(result.isDone()){
+                    return;
+                }
+                if(index == handlers.size()){
+                    result.complete(false);
+                    return;
+                }
+                CompletableFuture<Boolean> attempt;
+                try {
+                    attempt = handlers.get(index).handle().copy();
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                long timeout = handlerTimeoutMillis.get(index);
+                if(timeout > 0){
+                    attempt.orTimeout(timeout, TimeUnit.MILLISECONDS);
+                }
+                current.set(attempt);
+                // 链路可能在设置 current 之前就超时了，这时结束回调看不到这个副本，需要在这里取消
+                if(result.isDone()){
+                    attempt.cancel(true);
+                    return;
+                }
+                if(!attempt.isDone()){
+                    int following = index + 1;
+                    attempt.whenComplete((handled, error) -> {
+                        if(proceed(handled, error)){
+                            next(following);
+                        }
+                    });
+                    return;
+                }
+                Boolean handled = null;
+                Throwable error = null;
+                try {
+                    handled = attempt.join();
+                } catch (CompletionException | CancellationException e) {
+                    error = e;
+                }
+                if(!proceed(handled, error)){
+                    return;
+                }
+            }
+        }
+
+        // 返回 true 表示需要继续调用下一个处理器
+        private boolean proceed(Boolean handled, Throwable error){
+            if(error != null){
+                result.completeExceptionally(error);
+                return false;
+            }
+            if(Boolean.TRUE.equals(handled)){
+                result.complete(true);
+                return false;
+            }
+            return true;
+        }
+    }
+}
+
+interface AsyncHandler2 {
+    CompletableFuture<Boolean> handle();
+}
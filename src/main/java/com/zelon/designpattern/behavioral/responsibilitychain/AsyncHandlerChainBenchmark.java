@@ -0,0 +1,78 @@
+package com.zelon.designpattern.behavioral.responsibilitychain;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+阻塞链路 vs 非阻塞链路：10000 个并发请求，每条链路 3 个处理器，每个处理器模拟一次 10ms 的远程检查，
+最后一个处理器处理请求。阻塞链路使用 200 个线程的线程池，非阻塞链路只用一个定时线程模拟远程调用返回。
+ */
+public class AsyncHandlerChainBenchmark {
+    private static final int REQUESTS = 10_000;
+    private static final int BLOCKING_THREADS = 200;
+    private static final long REMOTE_LATENCY_MILLIS = 10;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("blocking chain: %,d requests/s%n", runBlocking());
+            System.out.printf("async chain:    %,d requests/s%n", runAsync());
+        }
+    }
+
+    private static long runBlocking() throws InterruptedException {
+        HandlerChain2 chain = new HandlerChain2();
+        chain.addHandler(() -> remoteCheck(false));
+        chain.addHandler(() -> remoteCheck(false));
+        chain.addHandler(() -> remoteCheck(true));
+        ExecutorService executor = Executors.newFixedThreadPool(BLOCKING_THREADS);
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            executor.execute(() -> {
+                chain.handle();
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return REQUESTS * 1_000_000_000L / elapsed;
+    }
+
+    private static long runAsync() throws InterruptedException {
+        ScheduledExecutorService remote = Executors.newSingleThreadScheduledExecutor();
+        AsyncHandlerChain2 chain = new AsyncHandlerChain2();
+        chain.addHandler(() -> asyncRemoteCheck(remote, false), 100);
+        chain.addHandler(() -> asyncRemoteCheck(remote, false), 100);
+        chain.addHandler(() -> asyncRemoteCheck(remote, true), 100);
+        chain.setChainTimeoutMillis(1000);
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            chain.handle().whenComplete((handled, error) -> done.countDown());
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        remote.shutdown();
+        return REQUESTS * 1_000_000_000L / elapsed;
+    }
+
+    private static boolean remoteCheck(boolean result) {
+        try {
+            Thread.sleep(REMOTE_LATENCY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private static CompletableFuture<Boolean> asyncRemoteCheck(ScheduledExecutorService remote, boolean result) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        remote.schedule(() -> future.complete(result), REMOTE_LATENCY_MILLIS, TimeUnit.MILLISECONDS);
+        return future;
+    }
+}
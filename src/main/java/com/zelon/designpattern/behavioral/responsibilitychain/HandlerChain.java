@@ -16,22 +16,67 @@ Spring Interceptor、Dubbo Filter 就是使用责任链模式实现的。框架
  */
 
 public class HandlerChain {
+    // 链表的修改和编译都在 this 上加锁，handle() 只读取 volatile 的编译结果，不加锁
     private Handler head;
     private Handler tail;
-    public void addHandler(Handler handler){
+    // 链表编译成的数组，执行时循环遍历，不需要每个处理器一层递归调用
+    private volatile Handler[] compiled;
+    private boolean frozen = false;
+
+    public synchronized void addHandler(Handler handler){
+        if(frozen){
+            throw new IllegalStateException("handler chain has been frozen");
+        }
         if(head == null) {
             head = handler;
-            tail = handler;
-            return;
+        } else {
+            tail.setSuccessor(handler);
         }
-        tail.setSuccessor(handler);
         tail = handler;
+        // 链接完成之后再让编译结果失效，否则并发的 handle() 可能把旧链表重新编译进缓存
+        compiled = null;
     }
 
     public void handle(){
-        if(head != null){
-            head.handle();
+        Handler[] handlers = compiled;
+        if(handlers == null){
+            handlers = compile();
+        }
+        // 没有处理器处理请求时正常结束
+        for(Handler handler : handlers){
+            if(handler.doHandle()){
+                return;
+            }
+        }
+    }
+
+    synchronized Handler getHead(){
+        return head;
+    }
+
+    // 冻结之后不允许再添加处理器，编译结果一直有效
+    public synchronized void freeze(){
+        frozen = true;
+        compile();
+    }
+
+    private synchronized Handler[] compile(){
+        // 其他线程可能已经编译过了
+        Handler[] current = compiled;
+        if(current != null){
+            return current;
+        }
+        int size = 0;
+        for(Handler h = head; h != null; h = h.successor){
+            size++;
+        }
+        Handler[] handlers = new Handler[size];
+        int i = 0;
+        for(Handler h = head; h != null; h = h.successor){
+            handlers[i++] = h;
         }
+        compiled = handlers;
+        return handlers;
     }
 
     // 这些属于客户端代码，客户端代码要想不修改，就得通过配置文件 + 反射的方式来实现。
@@ -39,6 +84,7 @@ public class HandlerChain {
         HandlerChain handlerChain = new HandlerChain();
         handlerChain.addHandler(new HandlerA());
         handlerChain.addHandler(new HandlerB());
+        handlerChain.handle();
     }
 }
 
@@ -52,7 +98,7 @@ abstract class Handler{
     // 设计成模板方法的模式，子类就不需要每次自己手动调用下一个处理器了
     // 而且手动调用容易忘记，导致 bug ，这里直接把步骤写死
     public final void handle(){
-        if(!doHandle()){
+        if(!doHandle() && successor != null){
             successor.handle();
         }
     }
@@ -2,21 +2,152 @@ package com.zelon.designpattern.behavioral.responsibilitychain;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class HandlerChain2 {
+    // 全链路模式默认使用的线程池。ForkJoinPool.commonPool() 的并行度是 CPU 核数减一，
+    // 小机器上只有一个线程，处理器一阻塞整条链路就退化成串行，所以用单独的按需创建线程的线程池
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "handler-chain-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private List<Handler2> handlers = new ArrayList<>();
+    // 自适应排序的约束：固定位置的处理器、before/after 顺序
+    private List<Handler2> pinnedHandlers = new ArrayList<>();
+    private List<Handler2[]> orderingConstraints = new ArrayList<>();
+    // 全链路模式的依赖：{被依赖的处理器, 依赖它的处理器}，不影响自适应排序
+    private List<Handler2[]> dependencies = new ArrayList<>();
+    private int reorderInterval;
+    // 为 null 时按添加顺序执行
+    private volatile AdaptiveHandlerOrdering adaptiveOrdering;
 
     public void addHandler(Handler2 handler){
         handlers.add(handler);
+        rebuildAdaptiveOrdering();
     }
 
     public void handle(){
+        AdaptiveHandlerOrdering ordering = adaptiveOrdering;
+        if(ordering != null){
+            ordering.handle();
+            return;
+        }
         for(Handler2 handler : handlers){
             if(handler.handle()){
                break;
             }
         }
     }
+
+    // 全链路模式：所有处理器都执行，相互独立的处理器并行执行，requireBefore()/dependsOn() 声明的依赖按顺序执行
+    public FullChainResult handleAll(){
+        return handleAll(DEFAULT_EXECUTOR, ParallelHandlerExecution.ErrorPolicy.COLLECT_ALL);
+    }
+
+    // 可以传入业务自己的线程池，JDK 21 以上处理器中有阻塞 IO 时可以传入虚拟线程的线程池
+    public FullChainResult handleAll(Executor executor, ParallelHandlerExecution.ErrorPolicy errorPolicy){
+        return ParallelHandlerExecution.run(handlers, allDependencies(), executor, errorPolicy);
+    }
+
+    // 开启自适应排序，每抽样 reorderInterval 个请求重新排一次序
+    public void enableAdaptiveOrdering(int reorderInterval){
+        if(reorderInterval <= 0){
+            throw new IllegalArgumentException("reorderInterval must be positive");
+        }
+        this.reorderInterval = reorderInterval;
+        rebuildAdaptiveOrdering();
+    }
+
+    // 固定处理器在当前位置，自适应排序不会移动它
+    public void pin(Handler2 handler){
+        checkInChain(handler);
+        for(Handler2[] constraint : orderingConstraints){
+            if(constraint[0] == handler || constraint[1] == handler){
+                throw new IllegalArgumentException("pinned handler can not have ordering constraints");
+            }
+        }
+        pinnedHandlers.add(handler);
+        rebuildAdaptiveOrdering();
+    }
+
+    // 声明 first 必须排在 second 之前；在全链路模式下表示 second 依赖 first 的执行结果
+    public void requireBefore(Handler2 first, Handler2 second){
+        checkInChain(first);
+        checkInChain(second);
+        if(first == second || pinnedHandlers.contains(first) || pinnedHandlers.contains(second)){
+            throw new IllegalArgumentException("invalid ordering constraint");
+        }
+        if(reachable(second, first)){
+            throw new IllegalArgumentException("ordering constraint introduces a cycle");
+        }
+        orderingConstraints.add(new Handler2[]{first, second});
+        rebuildAdaptiveOrdering();
+    }
+
+    // 声明全链路模式下 dependent 依赖 dependency 的执行结果，只影响 handleAll()，固定位置的处理器也可以声明依赖
+    public void dependsOn(Handler2 dependent, Handler2 dependency){
+        checkInChain(dependent);
+        checkInChain(dependency);
+        if(dependent == dependency){
+            throw new IllegalArgumentException("handler can not depend on itself");
+        }
+        if(reachable(dependent, dependency)){
+            throw new IllegalArgumentException("dependency introduces a cycle");
+        }
+        dependencies.add(new Handler2[]{dependency, dependent});
+    }
+
+    public List<HandlerStatsSnapshot> getHandlerStats(){
+        AdaptiveHandlerOrdering ordering = adaptiveOrdering;
+        return ordering == null ? List.of() : ordering.getHandlerStats();
+    }
+
+    public List<ReorderEvent> getReorderEvents(){
+        AdaptiveHandlerOrdering ordering = adaptiveOrdering;
+        return ordering == null ? List.of() : ordering.getReorderEvents();
+    }
+
+    public List<Handler2> getCurrentOrder(){
+        AdaptiveHandlerOrdering ordering = adaptiveOrdering;
+        return ordering == null ? List.copyOf(handlers) : ordering.getCurrentOrder();
+    }
+
+    // 处理器或约束发生变化时重新创建，之前的统计数据清零
+    private void rebuildAdaptiveOrdering(){
+        if(reorderInterval > 0){
+            adaptiveOrdering = new AdaptiveHandlerOrdering(handlers, pinnedHandlers, orderingConstraints, reorderInterval);
+        }
+    }
+
+    private void checkInChain(Handler2 handler){
+        if(!handlers.contains(handler)){
+            throw new IllegalArgumentException("handler is not in the chain");
+        }
+    }
+
+    // requireBefore() 的顺序约束在全链路模式下同样是依赖
+    private List<Handler2[]> allDependencies(){
+        List<Handler2[]> all = new ArrayList<>(orderingConstraints);
+        all.addAll(dependencies);
+        return all;
+    }
+
+    // 顺序约束和依赖合在一起检查环，否则全链路模式下可能互相等待
+    private boolean reachable(Handler2 from, Handler2 to){
+        if(from == to){
+            return true;
+        }
+        for(Handler2[] constraint : allDependencies()){
+            if(constraint[0] == from && reachable(constraint[1], to)){
+                return true;
+            }
+        }
+        return false;
+    }
 }
 
 interface Handler2 {
@@ -0,0 +1,80 @@
+package com.zelon.designpattern.behavioral.responsibilitychain;
+
+/*
+责任链执行方式基准：链表递归调用 vs 编译成数组后循环调用。
+链长分别为 5、50、500，只有最后一个处理器会处理请求，即每次请求都要走完整条链。
+ */
+public class HandlerChainBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final long DURATION_NANOS = 1_000_000_000L;
+
+    public static void main(String[] args) {
+        for (int length : new int[]{5, 50, 500}) {
+            HandlerChain chain = new HandlerChain();
+            for (int i = 0; i < length - 1; i++) {
+                // 多种处理器类型混合，模拟真实链路中的多态调用
+                switch (i % 3) {
+                    case 0: chain.addHandler(new DecliningHandlerA()); break;
+                    case 1: chain.addHandler(new DecliningHandlerB()); break;
+                    default: chain.addHandler(new DecliningHandlerC()); break;
+                }
+            }
+            ClaimingHandler last = new ClaimingHandler();
+            chain.addHandler(last);
+            Handler head = chain.getHead();
+            chain.freeze();
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(head::handle);
+                run(chain::handle);
+            }
+            System.out.printf("length=%d recursive: %,d requests/s%n", length, run(head::handle));
+            System.out.printf("length=%d compiled:  %,d requests/s%n", length, run(chain::handle));
+        }
+    }
+
+    private static long run(Runnable request) {
+        long count = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                request.run();
+            }
+            count += 1000;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < DURATION_NANOS);
+        return count * 1_000_000_000L / elapsed;
+    }
+
+    private static class DecliningHandlerA extends Handler {
+        @Override
+        boolean doHandle() {
+            return false;
+        }
+    }
+
+    private static class DecliningHandlerB extends Handler {
+        @Override
+        boolean doHandle() {
+            return false;
+        }
+    }
+
+    private static class DecliningHandlerC extends Handler {
+        @Override
+        boolean doHandle() {
+            return false;
+        }
+    }
+
+    private static class ClaimingHandler extends Handler {
+        private long handled;
+
+        @Override
+        boolean doHandle() {
+            handled++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.zelon.designpattern.behavioral.responsibilitychain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+全链路并行执行：HandlerChain 开头提到，实际开发中很多场景需要每个处理器都处理一遍请求。
+相互独立的处理器同时提交到线程池执行，总耗时接近最慢的一个处理器而不是所有处理器之和；
+通过 requireBefore()/dependsOn() 声明了依赖关系的处理器，要等前置处理器执行成功之后才会执行。
+快速失败时会中断还在执行的处理器，处理器需要响应中断才能尽快结束。
+ */
+class ParallelHandlerExecution {
+    public enum ErrorPolicy {
+        // 出现第一个异常就不再启动新的处理器，中断正在执行的处理器，并立即返回
+        FAIL_FAST,
+        // 所有处理器都执行完再返回，收集全部异常
+        COLLECT_ALL
+    }
+
+    private ParallelHandlerExecution() {}
+
+    static FullChainResult run(List<Handler2> handlers, List<Handler2[]> constraints,
+                               Executor executor, ErrorPolicy errorPolicy) {
+        int n = handlers.size();
+        List<List<Integer>> predecessors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            predecessors.add(new ArrayList<>());
+        }
+        for (Handler2[] constraint : constraints) {
+            predecessors.get(indexOf(handlers, constraint[1])).add(indexOf(handlers, constraint[0]));
+        }
+
+        AtomicReferenceArray<HandlerOutcome> outcomes = new AtomicReferenceArray<>(n);
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        // 正在执行处理器的线程，快速失败时中断它们；读写都在 running 上加锁，保证中断不会落到已经去执行别的任务的线程上
+        Thread[] running = new Thread[n];
+        boolean[] interrupted = new boolean[n];
+        CompletableFuture<?>[] done = new CompletableFuture<?>[n];
+        for (int index : topologicalOrder(n, predecessors)) {
+            List<Integer> dependencies = predecessors.get(index);
+            CompletableFuture<?>[] gates = new CompletableFuture<?>[dependencies.size()];
+            for (int i = 0; i < gates.length; i++) {
+                gates[i] = done[dependencies.get(i)];
+            }
+            CompletableFuture<Void> gate = gates.length == 0
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.allOf(gates);
+            done[index] = gate.thenRunAsync(() -> {
+                Handler2 handler = handlers.get(index);
+                for (int dependency : dependencies) {
+                    if (!outcomes.get(dependency).isSucceeded()) {
+                        outcomes.set(index, new HandlerOutcome(handler, HandlerOutcome.Status.SKIPPED, null));
+                        return;
+                    }
+                }
+                synchronized (running) {
+                    if (failed.isDone()) {
+                        outcomes.set(index, new HandlerOutcome(handler, HandlerOutcome.Status.CANCELLED, null));
+                        return;
+                    }
+                    running[index] = Thread.currentThread();
+                }
+                HandlerOutcome outcome;
+                try {
+                    boolean handled = handler.handle();
+                    outcome = new HandlerOutcome(handler,
+                            handled ? HandlerOutcome.Status.HANDLED : HandlerOutcome.Status.NOT_HANDLED, null);
+                } catch (Throwable t) {
+                    outcome = new HandlerOutcome(handler, HandlerOutcome.Status.FAILED, t);
+                }
+                boolean cancelled;
+                synchronized (running) {
+                    running[index] = null;
+                    cancelled = interrupted[index];
+                    // 清掉快速失败设置的中断标记，线程池的线程还要继续执行别的任务
+                    if (cancelled) {
+                        Thread.interrupted();
+                    }
+                }
+                if (cancelled) {
+                    outcomes.set(index, new HandlerOutcome(handler, HandlerOutcome.Status.CANCELLED, outcome.getError()));
+                    return;
+                }
+                // 先记录结果再通知失败，快速失败返回时能看到这个处理器的异常
+                outcomes.set(index, outcome);
+                if (outcome.getStatus() == HandlerOutcome.Status.FAILED && errorPolicy == ErrorPolicy.FAIL_FAST) {
+                    cancelRunning(failed, running, interrupted);
+                }
+            }, executor);
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(done);
+        if (errorPolicy == ErrorPolicy.FAIL_FAST) {
+            CompletableFuture.anyOf(all, failed).join();
+        } else {
+            all.join();
+        }
+
+        List<HandlerOutcome> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            HandlerOutcome outcome = outcomes.get(i);
+            // 快速失败返回时还没有结束的处理器
+            result.add(outcome != null ? outcome : new HandlerOutcome(handlers.get(i), HandlerOutcome.Status.CANCELLED, null));
+        }
+        return new FullChainResult(result);
+    }
+
+    private static void cancelRunning(CompletableFuture<Void> failed, Thread[] running, boolean[] interrupted) {
+        synchronized (running) {
+            failed.complete(null);
+            Thread self = Thread.currentThread();
+            for (int i = 0; i < running.length; i++) {
+                if (running[i] != null && running[i] != self) {
+                    interrupted[i] = true;
+                    running[i].interrupt();
+                }
+            }
+        }
+    }
+
+    private static List<Integer> topologicalOrder(int n, List<List<Integer>> predecessors) {
+        int[] remaining = new int[n];
+        List<List<Integer>> successors = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            successors.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            remaining[i] = predecessors.get(i).size();
+            for (int predecessor : predecessors.get(i)) {
+                successors.get(predecessor).add(i);
+            }
+        }
+        List<Integer> order = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (remaining[i] == 0) {
+                order.add(i);
+            }
+        }
+        for (int k = 0; k < order.size(); k++) {
+            for (int successor : successors.get(order.get(k))) {
+                if (--remaining[successor] == 0) {
+                    order.add(successor);
+                }
+            }
+        }
+        return order;
+    }
+
+    private static int indexOf(List<Handler2> handlers, Handler2 handler) {
+        for (int i = 0; i < handlers.size(); i++) {
+            if (handlers.get(i) == handler) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("handler is not in the chain");
+    }
+}
+
+class HandlerOutcome {
+    public enum Status {
+        HANDLED, NOT_HANDLED, FAILED,
+        // 前置处理器没有执行成功
+        SKIPPED,
+        // 快速失败后没有执行、被中断或没有等待其结果
+        CANCELLED
+    }
+
+    private final Handler2 handler;
+    private final Status status;
+    private final Throwable error;
+
+    HandlerOutcome(Handler2 handler, Status status, Throwable error) {
+        this.handler = handler;
+        this.status = status;
+        this.error = error;
+    }
+
+    public boolean isSucceeded() {
+        return status == Status.HANDLED || status == Status.NOT_HANDLED;
+    }
+
+    public Handler2 getHandler() {
+        return handler;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+}
+
+// 全链路执行结果，顺序与处理器的添加顺序一致
+class FullChainResult {
+    private final List<HandlerOutcome> outcomes;
+
+    FullChainResult(List<HandlerOutcome> outcomes) {
+        this.outcomes = Collections.unmodifiableList(outcomes);
+    }
+
+    public List<HandlerOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public boolean isAllSucceeded() {
+        for (HandlerOutcome outcome : outcomes) {
+            if (!outcome.isSucceeded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isAnyHandled() {
+        for (HandlerOutcome outcome : outcomes) {
+            if (outcome.getStatus() == HandlerOutcome.Status.HANDLED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Throwable> getErrors() {
+        List<Throwable> errors = new ArrayList<>();
+        for (HandlerOutcome outcome : outcomes) {
+            if (outcome.getError() != null) {
+                errors.add(outcome.getError());
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,95 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/*
+共享状态机的竞争基准：1 到 64 个线程对同一个状态机执行随机事件，
+对比 CAS 实现、CAS 批量提交（每批 16 个事件）和 synchronized 加锁实现。
+每个线程的随机事件序列在计时之前生成，三种实现执行完全相同的事件，批量提交只是把同一序列按 16 个一批切开；
+计时从所有线程都准备好并被同时放行时开始，不包含创建和启动线程的开销。
+ */
+public class ConcurrentMarioBenchmark {
+    private static final int EVENTS_PER_THREAD = 1_000_000;
+    private static final int BATCH = 16;
+    private static final int MAX_THREADS = 64;
+    // 每个线程循环使用的事件序列长度，必须是 2 的幂且是 BATCH 的倍数
+    private static final int SEQUENCE = 1 << 16;
+    private static final Event[] EVENTS = Event.values();
+
+    public static void main(String[] args) throws InterruptedException {
+        Event[][] sequences = new Event[MAX_THREADS][SEQUENCE];
+        Event[][][] batches = new Event[MAX_THREADS][SEQUENCE / BATCH][BATCH];
+        for (int t = 0; t < MAX_THREADS; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < SEQUENCE; i++) {
+                sequences[t][i] = EVENTS[random.nextInt(EVENTS.length)];
+                batches[t][i / BATCH][i % BATCH] = sequences[t][i];
+            }
+        }
+        int eventMask = SEQUENCE - 1;
+        int batchMask = SEQUENCE / BATCH - 1;
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            SynchronizedMario synchronizedMario = new SynchronizedMario();
+            long lockRate = run(threads, 1, (t, i) -> synchronizedMario.executeEvent(sequences[t][i & eventMask]));
+
+            ConcurrentMarioStateMachine casMario = new ConcurrentMarioStateMachine();
+            long casRate = run(threads, 1, (t, i) -> casMario.executeEvent(sequences[t][i & eventMask]));
+
+            ConcurrentMarioStateMachine batchMario = new ConcurrentMarioStateMachine();
+            long batchRate = run(threads, BATCH, (t, i) -> batchMario.applyAll(batches[t][i & batchMask]));
+
+            System.out.printf("threads=%-2d synchronized: %,d events/s, cas: %,d events/s, cas applyAll: %,d events/s%n",
+                    threads, lockRate, casRate, batchRate);
+        }
+    }
+
+    private static long run(int threads, int eventsPerCall, Call call) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        int calls = EVENTS_PER_THREAD / eventsPerCall;
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < calls; i++) {
+                    call.run(thread, i);
+                }
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (long) threads * calls * eventsPerCall * 1_000_000_000L / elapsed;
+    }
+
+    // 第 thread 个线程的第 i 次调用
+    private interface Call {
+        void run(int thread, int i);
+    }
+
+    // 对照组：用 synchronized 保证状态和积分一起更新
+    private static class SynchronizedMario {
+        private int score;
+        private State currentState = State.SMALL;
+
+        synchronized void executeEvent(Event event) {
+            int stateCode = currentState.getStateCode();
+            int eventCode = event.getEventCode();
+            currentState = MarioStateMachineV1.nextState(stateCode, eventCode);
+            score += MarioStateMachineV1.actionScore(stateCode, eventCode);
+        }
+    }
+}
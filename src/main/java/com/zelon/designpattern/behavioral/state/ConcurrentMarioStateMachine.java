@@ -0,0 +1,82 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+线程安全的查表法状态机：MarioStateMachineV1/V2 分别修改状态和积分，并发执行事件时会丢失更新，
+或者出现状态和积分对不上的情况。这里把状态码和积分打包进一个 long：
+高 32 位是状态码，低 32 位是积分，每个事件通过 CAS 重试循环原子地同时更新两者，不需要加锁。
+ */
+public class ConcurrentMarioStateMachine {
+    private final AtomicLong word = new AtomicLong(pack(State.SMALL.getStateCode(), 0));
+
+    public void obtainMushRoom(){
+        executeEvent(Event.GOT_MUSHROOM);
+    }
+
+    public void obtainFireFlower(){
+        executeEvent(Event.GOT_FIRE);
+    }
+
+    public void obtainCape(){
+        executeEvent(Event.GOT_CAPE);
+    }
+
+    public void meetMonster(){
+        executeEvent(Event.MET_MONSTER);
+    }
+
+    public void executeEvent(Event event) {
+        int eventCode = event.getEventCode();
+        long current;
+        long next;
+        do {
+            current = word.get();
+            next = transit(current, eventCode);
+        } while (!word.compareAndSet(current, next));
+    }
+
+    /*
+    批量执行：在本地按顺序算出所有事件执行后的结果，再用一次 CAS 提交，
+    中途有其他线程修改了状态则基于最新值整体重算。这批事件对其他线程来说是一次性生效的。
+     */
+    public void applyAll(Event[] events) {
+        long current;
+        long next;
+        do {
+            current = word.get();
+            next = current;
+            for (Event event : events) {
+                next = transit(next, event.getEventCode());
+            }
+        } while (!word.compareAndSet(current, next));
+    }
+
+    // 状态和积分从同一次读取中解出，保证两者一致
+    public State getCurrentState() {
+        return State.valueOfCode(stateCode(word.get()));
+    }
+
+    public int getScore() {
+        return score(word.get());
+    }
+
+    private static long transit(long word, int eventCode) {
+        int stateCode = stateCode(word);
+        int nextState = MarioStateMachineV1.nextState(stateCode, eventCode).getStateCode();
+        int nextScore = score(word) + MarioStateMachineV1.actionScore(stateCode, eventCode);
+        return pack(nextState, nextScore);
+    }
+
+    private static long pack(int stateCode, int score) {
+        return ((long) stateCode << 32) | (score & 0xFFFFFFFFL);
+    }
+
+    private static int stateCode(long word) {
+        return (int) (word >>> 32);
+    }
+
+    private static int score(long word) {
+        return (int) word;
+    }
+}
@@ -0,0 +1,59 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.Random;
+
+/*
+批量引擎 vs 每个马里奥一个 MarioStateMachineV1 对象：
+100 万个状态机，2000 万个随机事件，比较每秒处理的事件数。
+ */
+public class MarioBatchBenchmark {
+    private static final int MACHINES = 1_000_000;
+    private static final int EVENTS = 20_000_000;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        int[] machineIndexes = new int[EVENTS];
+        byte[] eventCodes = new byte[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            machineIndexes[i] = random.nextInt(MACHINES);
+            eventCodes[i] = (byte) random.nextInt(Event.values().length);
+        }
+
+        for (int round = 0; round < 3; round++) {
+            MarioStateMachineV1[] machines = new MarioStateMachineV1[MACHINES];
+            for (int i = 0; i < MACHINES; i++) {
+                machines[i] = new MarioStateMachineV1();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                MarioStateMachineV1 machine = machines[machineIndexes[i]];
+                switch (eventCodes[i]) {
+                    case 0: machine.obtainMushRoom(); break;
+                    case 1: machine.obtainCape(); break;
+                    case 2: machine.obtainFireFlower(); break;
+                    default: machine.meetMonster(); break;
+                }
+            }
+            report("objects", start);
+
+            MarioBatchEngine engine = new MarioBatchEngine(MACHINES);
+            start = System.nanoTime();
+            engine.apply(machineIndexes, eventCodes);
+            report("batch", start);
+
+            MarioBatchEngine parallelEngine = new MarioBatchEngine(MACHINES);
+            start = System.nanoTime();
+            parallelEngine.applyParallel(machineIndexes, eventCodes, Runtime.getRuntime().availableProcessors());
+            report("batch parallel", start);
+
+            if (engine.getScore(0) != machines[0].getScore() || parallelEngine.getScore(0) != machines[0].getScore()) {
+                throw new IllegalStateException("batch engine result mismatch");
+            }
+        }
+    }
+
+    private static void report(String name, long start) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-15s %,d events/s%n", name, EVENTS * 1_000_000_000L / elapsed);
+    }
+}
@@ -0,0 +1,170 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+查表法状态机的批量版本：同时模拟上百万个马里奥时，每个状态机一个对象、每次事件解引用一次枚举，
+对象头和指针追逐会占掉大部分时间。这里把所有状态机按"列"存放（struct of arrays）：
+状态码放在 byte[] 中，积分放在 int[] 中，状态转移表和行为表展开成一维数组，
+处理事件流时只剩数组下标运算，循环中没有任何对象分配。
+ */
+public class MarioBatchEngine {
+    private static final int EVENT_COUNT = Event.values().length;
+    // NEXT_STATE[stateCode * EVENT_COUNT + eventCode] = 下一个状态码，由 MarioStateMachineV1 的表展开得到
+    private static final byte[] NEXT_STATE;
+    private static final int[] ACTION_SCORE;
+
+    static {
+        int stateCount = State.values().length;
+        NEXT_STATE = new byte[stateCount * EVENT_COUNT];
+        ACTION_SCORE = new int[stateCount * EVENT_COUNT];
+        for (int state = 0; state < stateCount; state++) {
+            for (int event = 0; event < EVENT_COUNT; event++) {
+                NEXT_STATE[state * EVENT_COUNT + event] = (byte) MarioStateMachineV1.nextState(state, event).getStateCode();
+                ACTION_SCORE[state * EVENT_COUNT + event] = MarioStateMachineV1.actionScore(state, event);
+            }
+        }
+    }
+
+    private final byte[] states;
+    private final int[] scores;
+
+    public MarioBatchEngine(int machineCount) {
+        if (machineCount <= 0) {
+            throw new IllegalArgumentException("machineCount must be positive");
+        }
+        // 初始状态为 SMALL（状态码 0），积分为 0，与 MarioStateMachineV1 一致
+        this.states = new byte[machineCount];
+        this.scores = new int[machineCount];
+    }
+
+    // 从快照恢复时直接接管已经读出的数组
+    MarioBatchEngine(byte[] states, int[] scores) {
+        if (states.length != scores.length) {
+            throw new IllegalArgumentException("states and scores must have the same length");
+        }
+        this.states = states;
+        this.scores = scores;
+    }
+
+    public int getMachineCount() {
+        return states.length;
+    }
+
+    // 事件流用两个等长数组表示：machineIndexes[i] 号状态机发生了 eventCodes[i] 事件
+    // 处理之前先校验整个事件流，有非法的状态机下标或事件码时抛出异常，任何状态机都不会被修改
+    public void apply(int[] machineIndexes, byte[] eventCodes) {
+        checkEvents(machineIndexes, eventCodes);
+        applyRange(machineIndexes, eventCodes, 0, machineIndexes.length);
+    }
+
+    public void apply(int machineIndex, Event event) {
+        checkMachineIndex(machineIndex);
+        int transition = states[machineIndex] * EVENT_COUNT + event.getEventCode();
+        states[machineIndex] = NEXT_STATE[transition];
+        scores[machineIndex] += ACTION_SCORE[transition];
+    }
+
+    /*
+    多核并行：按状态机下标划分成 parallelism 个区间，先把事件流按区间分桶（保持原来的先后顺序），
+    再用 parallelism 个线程各自处理一个桶，每个线程只扫描属于自己的事件，
+    同一个状态机的事件仍然按事件流中的顺序处理，线程之间不共享写入的数据，不需要加锁。
+    线程池按调用创建，用完即关闭，适合大批量事件；小批量事件直接调用 apply()。
+     */
+    public void applyParallel(int[] machineIndexes, byte[] eventCodes, int parallelism) {
+        checkEvents(machineIndexes, eventCodes);
+        int parts = Math.min(parallelism, states.length);
+        if (parts <= 1) {
+            applyRange(machineIndexes, eventCodes, 0, machineIndexes.length);
+            return;
+        }
+        int chunk = (states.length + parts - 1) / parts;
+        // 计数排序分桶：bucketStart[p] 是第 p 个区间的事件在分桶数组中的起始位置
+        int[] bucketStart = new int[parts + 1];
+        for (int machine : machineIndexes) {
+            bucketStart[machine / chunk + 1]++;
+        }
+        for (int p = 0; p < parts; p++) {
+            bucketStart[p + 1] += bucketStart[p];
+        }
+        int[] position = bucketStart.clone();
+        int[] bucketMachines = new int[machineIndexes.length];
+        byte[] bucketEvents = new byte[eventCodes.length];
+        for (int i = 0; i < machineIndexes.length; i++) {
+            int target = position[machineIndexes[i] / chunk]++;
+            bucketMachines[target] = machineIndexes[i];
+            bucketEvents[target] = eventCodes[i];
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parts);
+        try {
+            Future<?>[] futures = new Future<?>[parts];
+            for (int p = 0; p < parts; p++) {
+                int from = bucketStart[p];
+                int to = bucketStart[p + 1];
+                futures[p] = executor.submit(() -> applyRange(bucketMachines, bucketEvents, from, to));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while applying events", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to apply events", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public State getState(int machineIndex) {
+        return State.valueOfCode(states[machineIndex]);
+    }
+
+    public int getScore(int machineIndex) {
+        return scores[machineIndex];
+    }
+
+    byte[] states() {
+        return states;
+    }
+
+    int[] scores() {
+        return scores;
+    }
+
+    // 处理事件流中 [from, to) 位置的事件，调用前已经校验过
+    private void applyRange(int[] machineIndexes, byte[] eventCodes, int from, int to) {
+        byte[] states = this.states;
+        int[] scores = this.scores;
+        for (int i = from; i < to; i++) {
+            int machine = machineIndexes[i];
+            int transition = states[machine] * EVENT_COUNT + eventCodes[i];
+            states[machine] = NEXT_STATE[transition];
+            scores[machine] += ACTION_SCORE[transition];
+        }
+    }
+
+    void checkEvents(int[] machineIndexes, byte[] eventCodes) {
+        if (machineIndexes.length != eventCodes.length) {
+            throw new IllegalArgumentException("machineIndexes and eventCodes must have the same length");
+        }
+        for (int i = 0; i < machineIndexes.length; i++) {
+            if (machineIndexes[i] < 0 || machineIndexes[i] >= states.length) {
+                throw new IllegalArgumentException("invalid machine index " + machineIndexes[i] + " at position " + i);
+            }
+            if (eventCodes[i] < 0 || eventCodes[i] >= EVENT_COUNT) {
+                throw new IllegalArgumentException("invalid event code " + eventCodes[i] + " at position " + i);
+            }
+        }
+    }
+
+    void checkMachineIndex(int machineIndex) {
+        if (machineIndex < 0 || machineIndex >= states.length) {
+            throw new IllegalArgumentException("invalid machine index " + machineIndex);
+        }
+    }
+}
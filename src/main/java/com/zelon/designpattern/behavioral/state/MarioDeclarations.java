@@ -0,0 +1,65 @@
+package com.zelon.designpattern.behavioral.state;
+
+// 用 StateMachineBuilder 声明的超级马里奥状态机
+class MarioDeclarations {
+    private MarioDeclarations() {}
+
+    // 查表法 V1：直接由 MarioStateMachineV1 的状态转移表和行为表生成，表按 stateCode/eventCode 索引，与 V1 一致
+    public static CompiledStateMachineDefinition<State, Event> v1() {
+        StateMachineBuilder<State, Event> builder = new StateMachineBuilder<>(
+                State.class, State::getStateCode, Event.class, Event::getEventCode)
+                .initialState(State.SMALL);
+        for (State state : State.values()) {
+            for (Event event : Event.values()) {
+                builder.transition(state, event,
+                        MarioStateMachineV1.nextState(state.getStateCode(), event.getEventCode()),
+                        MarioStateMachineV1.actionScore(state.getStateCode(), event.getEventCode()));
+            }
+        }
+        return builder.build();
+    }
+
+    // 状态模式 V2：按 MarioStateMachineV2 的状态类逐个声明，使用 V2 自己的状态和事件编码；
+    // V2 目前只有 SmallMario 吃蘑菇的转移有实现，其余转移保持原状态、积分不变
+    public static CompiledStateMachineDefinition<V2State, V2Event> v2() {
+        return new StateMachineBuilder<>(V2State.class, V2State::getCode, V2Event.class, V2Event::getCode)
+                .initialState(V2State.SMALL_MARIO)
+                // SmallMario
+                .transition(V2State.SMALL_MARIO, V2Event.OBTAIN_MUSH_ROOM, V2State.SUPER_MARIO, 100)
+                .build();
+    }
+
+    // MarioStateMachineV2 的状态类
+    enum V2State {
+        SMALL_MARIO(0),
+        SUPER_MARIO(1);
+
+        private final int code;
+
+        V2State(int code) {
+            this.code = code;
+        }
+
+        int getCode() {
+            return code;
+        }
+    }
+
+    // MarioStateMachineV2 的事件方法，编码按 IMario 中方法的声明顺序
+    enum V2Event {
+        OBTAIN_MUSH_ROOM(0),
+        OBTAIN_CAPE(1),
+        OBTAIN_FIRE_FLOWER(2),
+        MEET_MONSTER(3);
+
+        private final int code;
+
+        V2Event(int code) {
+            this.code = code;
+        }
+
+        int getCode() {
+            return code;
+        }
+    }
+}
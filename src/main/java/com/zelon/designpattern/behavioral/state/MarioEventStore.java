@@ -0,0 +1,288 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+批量状态机的事件溯源存储：重启后不需要重放全部历史就能恢复所有马里奥的状态。
+1. 事件日志：只追加写入的二进制文件，每条记录 5 字节 (int machineIndex, byte eventCode)，先校验、再写日志、最后修改状态
+2. 快照：定期把所有状态机的 (状态码, 积分) 通过内存映射写入快照文件，先写临时文件再原子重命名，并刷新目录
+持久性：每次 apply() 返回前日志已经写入文件（操作系统的页缓存），进程崩溃不会丢失事件；
+机器掉电时，最近一次 sync()、snapshot() 或 close() 之后的事件可能丢失，需要更强的保证时在 apply() 之后调用 sync()
+3. 日志按快照分代：生成第 K 代快照后，之后的事件写入第 K+1 代日志，K 及更早的日志和快照可以删除
+4. 恢复：加载最新的快照，只重放它之后的日志
+ */
+public class MarioEventStore implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x4D415249;
+    // magic | machineCount | generation(long)
+    private static final int SNAPSHOT_HEADER_SIZE = 16;
+    private static final int JOURNAL_RECORD_SIZE = 5;
+    private static final int JOURNAL_BUFFER_SIZE = 64 * 1024;
+    private static final String JOURNAL_PREFIX = "journal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private final Path directory;
+    private final long snapshotEveryEvents;
+    private final MarioBatchEngine engine;
+    private final ByteBuffer journalBuffer = ByteBuffer.allocateDirect(JOURNAL_BUFFER_SIZE);
+    private FileChannel journal;
+    private long generation;
+    private long eventsSinceSnapshot;
+    private final long recoveryNanos;
+    private final long replayedEvents;
+
+    private MarioEventStore(Path directory, int machineCount, long snapshotEveryEvents) throws IOException {
+        long start = System.nanoTime();
+        this.directory = directory;
+        this.snapshotEveryEvents = snapshotEveryEvents;
+        Files.createDirectories(directory);
+
+        long snapshotGeneration = latestGeneration(SNAPSHOT_PREFIX);
+        this.engine = snapshotGeneration < 0
+                ? new MarioBatchEngine(machineCount)
+                : loadSnapshot(snapshotFile(snapshotGeneration), machineCount);
+        long replayed = 0;
+        long lastJournal = snapshotGeneration;
+        for (long journalGeneration : generations(JOURNAL_PREFIX)) {
+            if (journalGeneration > snapshotGeneration) {
+                replayed += replay(journalFile(journalGeneration));
+                lastJournal = journalGeneration;
+            }
+        }
+        this.replayedEvents = replayed;
+        this.eventsSinceSnapshot = replayed;
+        // 恢复之后总是开始一个新的日志文件，崩溃时写了一半的记录留在旧文件中被忽略
+        this.generation = lastJournal + 1;
+        this.journal = openJournal(generation);
+        this.recoveryNanos = System.nanoTime() - start;
+    }
+
+    // snapshotEveryEvents 小于等于 0 时只在调用 snapshot() 时生成快照
+    public static MarioEventStore open(Path directory, int machineCount, long snapshotEveryEvents) throws IOException {
+        return new MarioEventStore(directory, machineCount, snapshotEveryEvents);
+    }
+
+    public void apply(int machineIndex, Event event) throws IOException {
+        // 非法参数不能写进日志，否则每次恢复都会在重放时失败
+        engine.checkMachineIndex(machineIndex);
+        appendJournal(machineIndex, (byte) event.getEventCode());
+        flushJournal(false);
+        engine.apply(machineIndex, event);
+        afterEvents(1);
+    }
+
+    public void apply(int[] machineIndexes, byte[] eventCodes) throws IOException {
+        engine.checkEvents(machineIndexes, eventCodes);
+        for (int i = 0; i < machineIndexes.length; i++) {
+            appendJournal(machineIndexes[i], eventCodes[i]);
+        }
+        flushJournal(false);
+        engine.apply(machineIndexes, eventCodes);
+        afterEvents(machineIndexes.length);
+    }
+
+    // 把已经写入的日志强制刷到磁盘，返回后即使掉电也不会丢失这些事件
+    public void sync() throws IOException {
+        flushJournal(true);
+    }
+
+    // 日志刷盘后写快照，然后切换到下一代日志并删除旧文件
+    public void snapshot() throws IOException {
+        flushJournal(true);
+        journal.close();
+        writeSnapshot(generation);
+        long snapshotGeneration = generation;
+        generation++;
+        journal = openJournal(generation);
+        eventsSinceSnapshot = 0;
+        deleteOlderThan(JOURNAL_PREFIX, snapshotGeneration + 1);
+        deleteOlderThan(SNAPSHOT_PREFIX, snapshotGeneration);
+    }
+
+    public MarioBatchEngine getEngine() {
+        return engine;
+    }
+
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    public long getReplayedEvents() {
+        return replayedEvents;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flushJournal(true);
+        journal.close();
+    }
+
+    private void afterEvents(int count) throws IOException {
+        eventsSinceSnapshot += count;
+        if (snapshotEveryEvents > 0 && eventsSinceSnapshot >= snapshotEveryEvents) {
+            snapshot();
+        }
+    }
+
+    private void appendJournal(int machineIndex, byte eventCode) throws IOException {
+        if (journalBuffer.remaining() < JOURNAL_RECORD_SIZE) {
+            flushJournal(false);
+        }
+        journalBuffer.putInt(machineIndex).put(eventCode);
+    }
+
+    private void flushJournal(boolean force) throws IOException {
+        journalBuffer.flip();
+        while (journalBuffer.hasRemaining()) {
+            journal.write(journalBuffer);
+        }
+        journalBuffer.clear();
+        if (force) {
+            journal.force(false);
+        }
+    }
+
+    private long replay(Path file) throws IOException {
+        long events = 0;
+        int[] machineIndexes = new int[JOURNAL_BUFFER_SIZE / JOURNAL_RECORD_SIZE];
+        byte[] eventCodes = new byte[machineIndexes.length];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(machineIndexes.length * JOURNAL_RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0 || buffer.position() > 0) {
+                buffer.flip();
+                int count = buffer.remaining() / JOURNAL_RECORD_SIZE;
+                if (count == 0) {
+                    // 文件末尾不完整的记录，崩溃时没有写完
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    machineIndexes[i] = buffer.getInt();
+                    eventCodes[i] = buffer.get();
+                }
+                if (count == machineIndexes.length) {
+                    engine.apply(machineIndexes, eventCodes);
+                } else {
+                    int[] tailIndexes = new int[count];
+                    byte[] tailCodes = new byte[count];
+                    System.arraycopy(machineIndexes, 0, tailIndexes, 0, count);
+                    System.arraycopy(eventCodes, 0, tailCodes, 0, count);
+                    engine.apply(tailIndexes, tailCodes);
+                }
+                events += count;
+                buffer.compact();
+            }
+        }
+        return events;
+    }
+
+    private void writeSnapshot(long snapshotGeneration) throws IOException {
+        byte[] states = engine.states();
+        int[] scores = engine.scores();
+        Path temp = directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration + ".tmp");
+        long size = SNAPSHOT_HEADER_SIZE + (long) states.length * (1 + Integer.BYTES);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(states.length).putLong(snapshotGeneration);
+            buffer.put(states);
+            buffer.asIntBuffer().put(scores);
+            buffer.force();
+        }
+        Files.move(temp, snapshotFile(snapshotGeneration), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // 重命名只修改了目录项，目录本身也要刷盘，否则掉电后可能看不到新快照，而旧日志已经被删除
+        syncDirectory();
+    }
+
+    private void syncDirectory() throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // Windows 等平台不能打开目录，这些平台上重命名本身就是持久的
+            return;
+        }
+        try (channel) {
+            channel.force(true);
+        }
+    }
+
+    private static MarioBatchEngine loadSnapshot(Path file, int machineCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < SNAPSHOT_HEADER_SIZE) {
+                throw new IOException("invalid snapshot file: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("invalid snapshot file: " + file);
+            }
+            int count = buffer.getInt();
+            if (count != machineCount) {
+                throw new IOException("snapshot has " + count + " machines, expected " + machineCount);
+            }
+            if (size != SNAPSHOT_HEADER_SIZE + (long) count * (1 + Integer.BYTES)) {
+                throw new IOException("snapshot file " + file + " has " + size + " bytes, expected "
+                        + (SNAPSHOT_HEADER_SIZE + (long) count * (1 + Integer.BYTES)));
+            }
+            buffer.getLong();
+            byte[] states = new byte[count];
+            int[] scores = new int[count];
+            buffer.get(states);
+            buffer.asIntBuffer().get(scores);
+            return new MarioBatchEngine(states, scores);
+        }
+    }
+
+    private FileChannel openJournal(long journalGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(journalFile(journalGeneration), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // 新日志文件的目录项也要落盘，否则 sync() 之后掉电仍然可能丢失整个文件
+        syncDirectory();
+        return channel;
+    }
+
+    private Path journalFile(long journalGeneration) {
+        return directory.resolve(JOURNAL_PREFIX + journalGeneration);
+    }
+
+    private Path snapshotFile(long snapshotGeneration) {
+        return directory.resolve(SNAPSHOT_PREFIX + snapshotGeneration);
+    }
+
+    private long latestGeneration(String prefix) throws IOException {
+        List<Long> all = generations(prefix);
+        return all.isEmpty() ? -1 : all.get(all.size() - 1);
+    }
+
+    private List<Long> generations(String prefix) throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path path : stream) {
+                String suffix = path.getFileName().toString().substring(prefix.length());
+                if (suffix.chars().allMatch(Character::isDigit)) {
+                    result.add(Long.parseLong(suffix));
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    private void deleteOlderThan(String prefix, long generation) throws IOException {
+        for (long old : generations(prefix)) {
+            if (old < generation) {
+                Files.deleteIfExists(directory.resolve(prefix + old));
+            }
+        }
+    }
+}
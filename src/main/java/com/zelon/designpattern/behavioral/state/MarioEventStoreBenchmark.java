@@ -0,0 +1,64 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/*
+1000 万个状态机的恢复耗时：先执行 5000 万个事件并生成快照，再执行 500 万个事件（只写日志），
+然后重新打开，统计 "加载快照 + 重放日志尾部" 的时间，并与从头重放全部日志对比。
+ */
+public class MarioEventStoreBenchmark {
+    private static final int MACHINES = 10_000_000;
+    private static final int BATCH = 1_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Path withSnapshot = Files.createTempDirectory("mario-snapshot");
+        Path journalOnly = Files.createTempDirectory("mario-journal");
+        try {
+            Random random = new Random(42);
+            int[] machineIndexes = new int[BATCH];
+            byte[] eventCodes = new byte[BATCH];
+            try (MarioEventStore snapshotStore = MarioEventStore.open(withSnapshot, MACHINES, 0);
+                 MarioEventStore journalStore = MarioEventStore.open(journalOnly, MACHINES, 0)) {
+                for (int batch = 0; batch < 55; batch++) {
+                    for (int i = 0; i < BATCH; i++) {
+                        machineIndexes[i] = random.nextInt(MACHINES);
+                        eventCodes[i] = (byte) random.nextInt(Event.values().length);
+                    }
+                    snapshotStore.apply(machineIndexes, eventCodes);
+                    journalStore.apply(machineIndexes, eventCodes);
+                    if (batch == 49) {
+                        snapshotStore.snapshot();
+                    }
+                }
+            }
+
+            MarioEventStore recovered = MarioEventStore.open(withSnapshot, MACHINES, 0);
+            System.out.printf("snapshot + tail: %d ms, replayed %,d events%n",
+                    recovered.getRecoveryNanos() / 1_000_000, recovered.getReplayedEvents());
+            MarioEventStore replayed = MarioEventStore.open(journalOnly, MACHINES, 0);
+            System.out.printf("full replay:     %d ms, replayed %,d events%n",
+                    replayed.getRecoveryNanos() / 1_000_000, replayed.getReplayedEvents());
+            for (int i = 0; i < MACHINES; i += 9973) {
+                if (recovered.getEngine().getScore(i) != replayed.getEngine().getScore(i)) {
+                    throw new IllegalStateException("recovered state mismatch at " + i);
+                }
+            }
+            recovered.close();
+            replayed.close();
+        } finally {
+            deleteRecursively(withSnapshot);
+            deleteRecursively(journalOnly);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
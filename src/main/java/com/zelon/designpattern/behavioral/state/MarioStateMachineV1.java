@@ -68,6 +68,15 @@ public class MarioStateMachineV1 {
     public State getCurrentState() {
         return currentState;
     }
+
+    // 供批量引擎等复用同一份状态转移表和行为表
+    static State nextState(int stateCode, int eventCode) {
+        return transitionTable[stateCode][eventCode];
+    }
+
+    static int actionScore(int stateCode, int eventCode) {
+        return actionTable[stateCode][eventCode];
+    }
 }
 enum State{
     SMALL(0),
@@ -83,6 +92,15 @@ enum State{
     public int getStateCode(){
         return this.stateCode;
     }
+
+    public static State valueOfCode(int stateCode){
+        for (State state : values()) {
+            if (state.stateCode == stateCode) {
+                return state;
+            }
+        }
+        throw new IllegalArgumentException("unknown state code: " + stateCode);
+    }
 }
 
 enum Event{
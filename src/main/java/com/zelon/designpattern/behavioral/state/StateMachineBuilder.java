@@ -0,0 +1,174 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.function.ToIntFunction;
+
+/*
+通用查表状态机构建器：用户声明状态、事件、状态转移和积分行为，build() 时编译成展开的一维表，
+next[stateCode * eventCount + eventCode]、action[...] 都是 final 的 int 数组，
+执行事件只需要一次乘加和两次数组访问，没有枚举 getter 和接口调用，JIT 很容易内联。
+状态码、事件码默认是枚举的 ordinal()，也可以传入枚举自己的编码（比如 MarioStateMachineV1 的 stateCode/eventCode），
+编码必须是 0 到 n-1 且不重复，构造时校验。
+没有声明的转移保持原状态、积分不变。
+ */
+public class StateMachineBuilder<S extends Enum<S>, E extends Enum<E>> {
+    // statesByCode[stateCode] = 状态
+    private final S[] statesByCode;
+    // eventCodes[event.ordinal()] = 事件码
+    private final int[] stateCodes;
+    private final int[] eventCodes;
+    private final int[] next;
+    private final int[] action;
+    private S initialState;
+
+    public StateMachineBuilder(Class<S> stateType, Class<E> eventType) {
+        this(stateType, Enum::ordinal, eventType, Enum::ordinal);
+    }
+
+    public StateMachineBuilder(Class<S> stateType, ToIntFunction<S> stateCode,
+                               Class<E> eventType, ToIntFunction<E> eventCode) {
+        S[] states = stateType.getEnumConstants();
+        E[] events = eventType.getEnumConstants();
+        if (states.length == 0 || events.length == 0) {
+            throw new IllegalArgumentException("states and events can not be empty");
+        }
+        this.stateCodes = codes(states, stateCode);
+        this.eventCodes = codes(events, eventCode);
+        this.statesByCode = states.clone();
+        for (S state : states) {
+            statesByCode[stateCodes[state.ordinal()]] = state;
+        }
+        this.next = new int[states.length * events.length];
+        this.action = new int[states.length * events.length];
+        for (int state = 0; state < states.length; state++) {
+            for (int event = 0; event < events.length; event++) {
+                next[state * events.length + event] = state;
+            }
+        }
+        this.initialState = states[0];
+    }
+
+    public StateMachineBuilder<S, E> initialState(S initialState) {
+        if (initialState == null) {
+            throw new IllegalArgumentException("initialState can not be null");
+        }
+        this.initialState = initialState;
+        return this;
+    }
+
+    public StateMachineBuilder<S, E> transition(S from, E event, S to) {
+        return transition(from, event, to, 0);
+    }
+
+    public StateMachineBuilder<S, E> transition(S from, E event, S to, int scoreDelta) {
+        if (from == null || event == null || to == null) {
+            throw new IllegalArgumentException("from, event and to can not be null");
+        }
+        int index = stateCodes[from.ordinal()] * eventCodes.length + eventCodes[event.ordinal()];
+        next[index] = stateCodes[to.ordinal()];
+        action[index] = scoreDelta;
+        return this;
+    }
+
+    // 编译：复制一份表，之后构建器再修改也不会影响已经编译好的定义
+    public CompiledStateMachineDefinition<S, E> build() {
+        return new CompiledStateMachineDefinition<>(statesByCode, eventCodes, next.clone(), action.clone(),
+                stateCodes[initialState.ordinal()]);
+    }
+
+    // 按 ordinal 取每个枚举值的编码，并校验编码是 0 到 n-1 的一个排列
+    private static <T extends Enum<T>> int[] codes(T[] values, ToIntFunction<T> code) {
+        int[] codes = new int[values.length];
+        boolean[] used = new boolean[values.length];
+        for (T value : values) {
+            int c = code.applyAsInt(value);
+            if (c < 0 || c >= values.length || used[c]) {
+                throw new IllegalArgumentException("codes must be unique and in [0, " + values.length + "): " + value + "=" + c);
+            }
+            used[c] = true;
+            codes[value.ordinal()] = c;
+        }
+        return codes;
+    }
+}
+
+class CompiledStateMachineDefinition<S extends Enum<S>, E extends Enum<E>> {
+    private final S[] statesByCode;
+    private final int[] eventCodes;
+    private final int[] next;
+    private final int[] action;
+    private final int initialState;
+
+    CompiledStateMachineDefinition(S[] statesByCode, int[] eventCodes, int[] next, int[] action, int initialState) {
+        this.statesByCode = statesByCode;
+        this.eventCodes = eventCodes;
+        this.next = next;
+        this.action = action;
+        this.initialState = initialState;
+    }
+
+    public CompiledStateMachine<S, E> newInstance() {
+        return new CompiledStateMachine<>(this);
+    }
+
+    S state(int stateCode) {
+        return statesByCode[stateCode];
+    }
+
+    int initialState() {
+        return initialState;
+    }
+
+    int[] eventCodes() {
+        return eventCodes;
+    }
+
+    int[] next() {
+        return next;
+    }
+
+    int[] action() {
+        return action;
+    }
+}
+
+// 状态机实例只保存当前状态序号和积分，定义（转移表）在所有实例间共享
+class CompiledStateMachine<S extends Enum<S>, E extends Enum<E>> {
+    private final CompiledStateMachineDefinition<S, E> definition;
+    private final int[] next;
+    private final int[] action;
+    private final int[] eventCodes;
+    private final int eventCount;
+    private int state;
+    private int score;
+
+    CompiledStateMachine(CompiledStateMachineDefinition<S, E> definition) {
+        this.definition = definition;
+        this.next = definition.next();
+        this.action = definition.action();
+        this.eventCodes = definition.eventCodes();
+        this.eventCount = eventCodes.length;
+        this.state = definition.initialState();
+    }
+
+    public void fire(E event) {
+        fire(eventCodes[event.ordinal()]);
+    }
+
+    // 越界的事件码会落到其他状态的表项上，所以必须检查
+    public void fire(int eventCode) {
+        if (eventCode < 0 || eventCode >= eventCount) {
+            throw new IllegalArgumentException("invalid event code " + eventCode);
+        }
+        int index = state * eventCount + eventCode;
+        state = next[index];
+        score += action[index];
+    }
+
+    public S getCurrentState() {
+        return definition.state(state);
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,91 @@
+package com.zelon.designpattern.behavioral.state;
+
+import java.util.Random;
+
+/*
+三种事件分发方式对比：
+1. MarioStateMachineV1：枚举 getter + 二维数组
+2. MarioStateMachineV2：状态对象的接口调用
+3. StateMachineBuilder 编译出的一维表（V1、V2 各自的声明见 MarioDeclarations）
+同一个随机事件序列在单个状态机上反复执行，编译出的状态机分别和 V1、V2 核对积分。
+V2 只实现了部分转移，和 V1 的结果不同，这里只比较分发开销。
+ */
+public class StateMachineDispatchBenchmark {
+    private static final int EVENTS = 1 << 20;
+    private static final int ROUNDS = 100;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        Event[] events = new Event[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = Event.values()[random.nextInt(Event.values().length)];
+        }
+        // 同一个事件序列按 V2 的事件编码表示
+        MarioDeclarations.V2Event[] eventsV2 = new MarioDeclarations.V2Event[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            switch (events[i]) {
+                case GOT_MUSHROOM: eventsV2[i] = MarioDeclarations.V2Event.OBTAIN_MUSH_ROOM; break;
+                case GOT_CAPE: eventsV2[i] = MarioDeclarations.V2Event.OBTAIN_CAPE; break;
+                case GOT_FIRE: eventsV2[i] = MarioDeclarations.V2Event.OBTAIN_FIRE_FLOWER; break;
+                default: eventsV2[i] = MarioDeclarations.V2Event.MEET_MONSTER; break;
+            }
+        }
+        CompiledStateMachineDefinition<State, Event> definition = MarioDeclarations.v1();
+        CompiledStateMachineDefinition<MarioDeclarations.V2State, MarioDeclarations.V2Event> definitionV2 = MarioDeclarations.v2();
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            long v1 = 0;
+            long v2 = 0;
+            long compiled = 0;
+            long compiledV2 = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                MarioStateMachineV1 machineV1 = new MarioStateMachineV1();
+                long start = System.nanoTime();
+                for (Event event : events) {
+                    switch (event) {
+                        case GOT_MUSHROOM: machineV1.obtainMushRoom(); break;
+                        case GOT_CAPE: machineV1.obtainCape(); break;
+                        case GOT_FIRE: machineV1.obtainFireFlower(); break;
+                        default: machineV1.meetMonster(); break;
+                    }
+                }
+                v1 += System.nanoTime() - start;
+
+                MarioStateMachineV2 machineV2 = new MarioStateMachineV2();
+                start = System.nanoTime();
+                for (Event event : events) {
+                    switch (event) {
+                        case GOT_MUSHROOM: machineV2.obtainMushRoom(); break;
+                        case GOT_CAPE: machineV2.obtainCape(); break;
+                        case GOT_FIRE: machineV2.obtainFireFlower(); break;
+                        default: machineV2.meetMonster(); break;
+                    }
+                }
+                v2 += System.nanoTime() - start;
+
+                CompiledStateMachine<State, Event> machine = definition.newInstance();
+                start = System.nanoTime();
+                for (Event event : events) {
+                    machine.fire(event);
+                }
+                compiled += System.nanoTime() - start;
+                if (machine.getScore() != machineV1.getScore()) {
+                    throw new IllegalStateException("compiled machine result mismatch");
+                }
+
+                CompiledStateMachine<MarioDeclarations.V2State, MarioDeclarations.V2Event> machine2 = definitionV2.newInstance();
+                start = System.nanoTime();
+                for (MarioDeclarations.V2Event event : eventsV2) {
+                    machine2.fire(event);
+                }
+                compiledV2 += System.nanoTime() - start;
+                if (machine2.getScore() != machineV2.getScore()) {
+                    throw new IllegalStateException("compiled V2 machine result mismatch");
+                }
+            }
+            long total = (long) EVENTS * ROUNDS * 1_000_000_000L;
+            System.out.printf("V1 table: %,d events/s, V2 state objects: %,d events/s, compiled V1: %,d events/s, compiled V2: %,d events/s%n",
+                    total / v1, total / v2, total / compiled, total / compiledV2);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.zelon.designpattern.behavioral.strategy;
+
+import java.util.Random;
+
+/*
+批量折扣 vs 逐个订单调用 OrderService.discount()：1000 万个订单，vip/normal 随机分布。
+订单对象在计时之前就构造好了，per-order 只统计 discount() 本身的开销，不包含构造 Order 的分配。
+ */
+public class BulkDiscountBenchmark {
+    private static final int ORDERS = 10_000_000;
+
+    public static void main(String[] args) {
+        String[] typeDictionary = {"vip", "normal"};
+        Random random = new Random(42);
+        int[] typeCodes = new int[ORDERS];
+        double[] amounts = new double[ORDERS];
+        Order[] orders = new Order[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            typeCodes[i] = random.nextInt(typeDictionary.length);
+            amounts[i] = random.nextInt(100_000) / 100.0;
+            orders[i] = new Order(typeDictionary[typeCodes[i]], amounts[i]);
+        }
+        OrderService orderService = new OrderService();
+        double[] results = new double[ORDERS];
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ORDERS; i++) {
+                results[i] = orderService.discount(orders[i]);
+            }
+            report("per-order", start);
+
+            start = System.nanoTime();
+            orderService.discountBulk(typeDictionary, typeCodes, amounts, results, false);
+            report("bulk", start);
+
+            start = System.nanoTime();
+            orderService.discountBulk(typeDictionary, typeCodes, amounts, results, true);
+            report("bulk parallel", start);
+
+            for (int i = 0; i < ORDERS; i += 997) {
+                if (results[i] != orderService.discount(orders[i])) {
+                    throw new IllegalStateException("bulk result mismatch at " + i);
+                }
+            }
+        }
+    }
+
+    private static void report(String name, long start) {
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-14s %,d orders/s%n", name, ORDERS * 1_000_000_000L / elapsed);
+    }
+}
@@ -0,0 +1,107 @@
+package com.zelon.designpattern.behavioral.strategy;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+批量计算折扣：日终重新定价时一次处理上千万个订单，逐个订单查 HashMap、调接口太慢。
+输入按列存放：typeCodes[i] 是第 i 个订单类型在 typeDictionary 中的下标，amounts[i] 是金额。
+1. 每种类型只查一次策略注册表
+2. 按块（CHUNK 个订单）处理，块内把同一策略的订单下标收集到连续的数组中，
+   每个策略在自己的下标区间上跑一个紧凑的循环，一块的数据始终在 CPU 缓存中
+3. 可以用 fork/join 把整个输入拆给多个核并行计算，结果直接写入调用方传入的 results 数组，不为每个订单分配对象；
+   没有重写 calculateAll() 的策略按类型复用一个临时订单逐个调用 calculate()
+ */
+class BulkDiscountCalculator {
+    private static final int CHUNK = 4096;
+    // 小于这个长度的区间不再拆分
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private BulkDiscountCalculator() {}
+
+    static void calculate(String[] typeDictionary, int[] typeCodes, double[] amounts, double[] results, boolean parallel) {
+        if (amounts.length != typeCodes.length) {
+            throw new IllegalArgumentException("typeCodes and amounts must have the same length");
+        }
+        if (results.length < typeCodes.length) {
+            throw new IllegalArgumentException("results must be at least as long as typeCodes");
+        }
+        int[] counts = new int[typeDictionary.length];
+        for (int code : typeCodes) {
+            if (code < 0 || code >= typeDictionary.length) {
+                throw new IllegalArgumentException("type code out of range: " + code);
+            }
+            counts[code]++;
+        }
+        // 整批计算使用同一版本的策略，调用次数按类型一次性记录
+        DiscountStrategyRegistry registry = DiscountStrategyFactory.getRegistry();
+        int[] typeIds = new int[typeDictionary.length];
+        for (int code = 0; code < typeDictionary.length; code++) {
+            typeIds[code] = registry.typeIdOf(typeDictionary[code]);
+        }
+        DiscountStrategy[] strategies = registry.getStrategies(typeIds, counts);
+        RangeTask task = new RangeTask(typeDictionary, strategies, typeCodes, amounts, results, 0, typeCodes.length);
+        if (parallel) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.calculateRange();
+        }
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] typeDictionary;
+        private final DiscountStrategy[] strategies;
+        private final int[] typeCodes;
+        private final double[] amounts;
+        private final double[] results;
+        private final int from;
+        private final int to;
+
+        RangeTask(String[] typeDictionary, DiscountStrategy[] strategies, int[] typeCodes, double[] amounts,
+                  double[] results, int from, int to) {
+            this.typeDictionary = typeDictionary;
+            this.strategies = strategies;
+            this.typeCodes = typeCodes;
+            this.amounts = amounts;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                calculateRange();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(typeDictionary, strategies, typeCodes, amounts, results, from, middle),
+                    new RangeTask(typeDictionary, strategies, typeCodes, amounts, results, middle, to));
+        }
+
+        void calculateRange() {
+            // 每种策略一个下标缓冲区和一个临时订单，整个区间复用；临时订单只在策略使用默认的 calculateAll() 时读写
+            int[][] indexes = new int[strategies.length][CHUNK];
+            int[] counts = new int[strategies.length];
+            Order[] scratch = new Order[strategies.length];
+            for (int chunkStart = from; chunkStart < to; chunkStart += CHUNK) {
+                int chunkEnd = Math.min(to, chunkStart + CHUNK);
+                for (int i = chunkStart; i < chunkEnd; i++) {
+                    int code = typeCodes[i];
+                    indexes[code][counts[code]++] = i;
+                }
+                for (int code = 0; code < strategies.length; code++) {
+                    if (counts[code] > 0) {
+                        if (scratch[code] == null) {
+                            scratch[code] = new Order(typeDictionary[code], 0);
+                        }
+                        strategies[code].calculateAll(scratch[code], amounts, indexes[code], counts[code], results);
+                        counts[code] = 0;
+                    }
+                }
+            }
+        }
+    }
+}
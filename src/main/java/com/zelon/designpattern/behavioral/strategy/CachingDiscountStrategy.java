@@ -0,0 +1,362 @@
+package com.zelon.designpattern.behavioral.strategy;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/*
+带缓存的折扣策略（装饰器）：阶梯价、叠加优惠券、查促销表等策略计算开销大，
+购物车反复刷新时又总是用相同的参数调用，可以把结果缓存起来。
+1. 缓存 key = 策略 id + 类型 id + 策略声明会读取的订单字段，没有声明的字段不影响结果
+2. 按 key 的哈希分段，每段一个按访问顺序排列的 LinkedHashMap（LRU）和一把锁，没有全局锁
+3. 每个条目有过期时间（TTL）
+4. 关联注册表时，装饰器放在注册表前面（自己不能注册进这个注册表），未命中时按类型 id 从注册表解析当前的策略计算；
+   每个条目记录计算时这个类型的版本号，命中时版本号已经变化的条目当作未命中并删除，
+   计算期间版本号变化的结果不写入缓存，所以热替换只让被替换的类型失效，也不会有替换前算出的结果留在缓存中
+5. 统计命中、未命中、淘汰、过期次数
+ */
+class CachingDiscountStrategy implements DiscountStrategy {
+    // 策略计算结果依赖的订单字段
+    public enum OrderField {
+        TYPE(Order::getType),
+        AMOUNT(Order::getAmount);
+
+        private final Function<Order, Object> extractor;
+
+        OrderField(Function<Order, Object> extractor) {
+            this.extractor = extractor;
+        }
+    }
+
+    private final String strategyId;
+    private final DiscountStrategy delegate;
+    private final OrderField[] fields;
+    private final long ttlNanos;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final DiscountStrategyRegistry registry;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private CachingDiscountStrategy(Builder builder) {
+        this.strategyId = builder.strategyId;
+        this.delegate = builder.delegate;
+        this.fields = builder.fields;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttlMillis);
+        this.registry = builder.registry;
+        int segmentCount = builder.segments;
+        this.segments = new Segment[segmentCount];
+        int perSegment = Math.max(1, builder.maximumSize / segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.segmentMask = segmentCount - 1;
+    }
+
+    @Override
+    public double calculate(Order order) {
+        int typeId = typeIdOf(order);
+        // 先读版本号再解析策略，见 DiscountStrategyRegistry.getTypeVersion()
+        long version = registry == null ? 0 : registry.getTypeVersion(typeId);
+        CacheKey key = keyOf(typeId, order);
+        Segment segment = segmentFor(key);
+        long now = System.nanoTime();
+        Double cached = segment.get(key, now, version);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        // 在锁外计算，同一个 key 并发未命中时可能重复计算，但不会阻塞其他 key
+        double result = delegateFor(typeId).calculate(order);
+        // 计算期间这个类型被替换过，结果可能来自旧策略，不写入缓存
+        if (registry == null || registry.getTypeVersion(typeId) == version) {
+            segment.put(key, result, now + ttlNanos, version);
+        }
+        return result;
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public DiscountCacheStats getStats() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return new DiscountCacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size);
+    }
+
+    // 创建订单时还没有注册的类型按字符串再查一次，和 OrderService.discount() 一致
+    private int typeIdOf(Order order) {
+        int typeId = order.getTypeId();
+        return typeId < 0 && registry != null ? registry.typeIdOf(order.getType()) : typeId;
+    }
+
+    private DiscountStrategy delegateFor(int typeId) {
+        if (registry == null) {
+            return delegate;
+        }
+        DiscountStrategy strategy = registry.resolve(typeId);
+        if (strategy == this) {
+            throw new IllegalStateException("caching strategy " + strategyId + " is registered in the registry it reads from");
+        }
+        return strategy;
+    }
+
+    private CacheKey keyOf(int typeId, Order order) {
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].extractor.apply(order);
+        }
+        return new CacheKey(strategyId, typeId, values);
+    }
+
+    private Segment segmentFor(CacheKey key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<CacheKey, Entry> map;
+
+        Segment(int capacity) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CacheKey, Entry> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Double get(CacheKey key, long now, long version) {
+            lock.lock();
+            try {
+                Entry entry = map.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                // 计算时使用的策略已经被替换
+                if (entry.version != version) {
+                    map.remove(key);
+                    return null;
+                }
+                if (entry.expiresAt - now <= 0) {
+                    map.remove(key);
+                    expirations.increment();
+                    return null;
+                }
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(CacheKey key, double value, long expiresAt, long version) {
+            lock.lock();
+            try {
+                map.put(key, new Entry(value, expiresAt, version));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                map.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Entry {
+        private final double value;
+        private final long expiresAt;
+        // 计算时类型的版本号
+        private final long version;
+
+        Entry(double value, long expiresAt, long version) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.version = version;
+        }
+    }
+
+    private static class CacheKey {
+        private final String strategyId;
+        private final int typeId;
+        private final Object[] values;
+        private final int hash;
+
+        CacheKey(String strategyId, int typeId, Object[] values) {
+            this.strategyId = strategyId;
+            this.typeId = typeId;
+            this.values = values;
+            this.hash = 31 * (31 * strategyId.hashCode() + typeId) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return hash == other.hash && typeId == other.typeId && strategyId.equals(other.strategyId)
+                    && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public static class Builder {
+        private static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+        private static final long DEFAULT_TTL_MILLIS = 60_000;
+        private static final int DEFAULT_SEGMENTS = 16;
+
+        private String strategyId;
+        private DiscountStrategy delegate;
+        private OrderField[] fields = OrderField.values();
+        private int maximumSize = DEFAULT_MAXIMUM_SIZE;
+        private long ttlMillis = DEFAULT_TTL_MILLIS;
+        private int segments = DEFAULT_SEGMENTS;
+        private DiscountStrategyRegistry registry;
+
+        public Builder(){}
+
+        public CachingDiscountStrategy build() {
+            if (strategyId == null || strategyId.isBlank()) {
+                throw new IllegalArgumentException("strategyId can not be blank or null");
+            }
+            if ((delegate == null) == (registry == null)) {
+                throw new IllegalArgumentException("exactly one of delegate and registry must be set");
+            }
+            if (maximumSize < segments) {
+                throw new IllegalArgumentException("maximumSize must be at least segments");
+            }
+            return new CachingDiscountStrategy(this);
+        }
+
+        public Builder setStrategyId(String strategyId) {
+            this.strategyId = strategyId;
+            return this;
+        }
+
+        // 固定的被装饰策略，和 setRegistry() 二选一
+        public Builder setDelegate(DiscountStrategy delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        // 策略计算时读取的订单字段，默认为全部字段
+        public Builder setFields(OrderField... fields) {
+            if (fields == null || fields.length == 0) {
+                throw new IllegalArgumentException("fields can not be empty");
+            }
+            this.fields = fields.clone();
+            return this;
+        }
+
+        public Builder setMaximumSize(int maximumSize) {
+            if (maximumSize <= 0) {
+                throw new IllegalArgumentException("maximumSize must be positive");
+            }
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder setTtlMillis(long ttlMillis) {
+            if (ttlMillis <= 0) {
+                throw new IllegalArgumentException("ttlMillis must be positive");
+            }
+            this.ttlMillis = ttlMillis;
+            return this;
+        }
+
+        public Builder setSegments(int segments) {
+            if (segments <= 0 || Integer.bitCount(segments) != 1) {
+                throw new IllegalArgumentException("segments must be a positive power of 2");
+            }
+            this.segments = segments;
+            return this;
+        }
+
+        // 按订单类型从注册表解析被装饰的策略，和 setDelegate() 二选一；热替换某个类型时只有它的缓存条目失效
+        public Builder setRegistry(DiscountStrategyRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+    }
+}
+
+class DiscountCacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long size;
+
+    DiscountCacheStats(long hits, long misses, long evictions, long expirations, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getSize() {
+        return size;
+    }
+}
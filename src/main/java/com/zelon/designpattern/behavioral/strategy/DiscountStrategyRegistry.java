@@ -0,0 +1,187 @@
+package com.zelon.designpattern.behavioral.strategy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+可热替换的策略注册表：
+1. 注册策略时为类型字符串分配一个稠密的 int id，之后热路径上按 id 直接访问数组，不再计算字符串哈希；
+   查找时不分配 id，未知类型直接使用兜底策略，所以任意的输入字符串不会让 id 表无限增长
+2. 所有策略放在一个不可变的表中，替换策略时构造新表，通过一次原子操作整体替换，
+   正在执行的 discount() 继续使用旧表，读操作从不阻塞
+3. 每次替换版本号加一，compareAndSwap() 可以基于版本号做乐观并发控制；
+   每个类型另有自己的版本号，只在这个类型实际使用的策略（包括兜底策略）被替换时才变化，缓存据此只失效被替换的类型
+4. 未知类型使用兜底策略；没有配置兜底策略时抛出异常，而不是返回 null
+ */
+class DiscountStrategyRegistry {
+    private final ConcurrentHashMap<String, Integer> typeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTypeId = new AtomicInteger();
+    private final AtomicReference<StrategyTable> table =
+            new AtomicReference<>(new StrategyTable(0, new DiscountStrategy[0], new LongAdder[0], new long[0], null, 0, new LongAdder()));
+
+    // 已经注册过的类型返回它的 id，未知类型返回 -1（按 id 查找时使用兜底策略）
+    public int typeIdOf(String type) {
+        if (type == null) {
+            return -1;
+        }
+        Integer id = typeIds.get(type);
+        return id != null ? id : -1;
+    }
+
+    // 类型字符串 -> 稠密 id，同一个字符串总是得到同一个 id，只在注册策略时调用
+    private int intern(String type) {
+        if (type == null) {
+            throw new IllegalArgumentException("type can not be null");
+        }
+        Integer id = typeIds.get(type);
+        return id != null ? id : typeIds.computeIfAbsent(type, t -> nextTypeId.getAndIncrement());
+    }
+
+    // 热路径：按 id 取策略并计数
+    public DiscountStrategy getStrategy(int typeId) {
+        return table.get().lookup(typeId, 1);
+    }
+
+    // 批量场景：从同一个版本的表中解析所有类型，counts[i] 是 typeIds[i] 这一批的调用次数
+    DiscountStrategy[] getStrategies(int[] typeIds, int[] counts) {
+        StrategyTable current = table.get();
+        DiscountStrategy[] strategies = new DiscountStrategy[typeIds.length];
+        for (int i = 0; i < typeIds.length; i++) {
+            strategies[i] = current.lookup(typeIds[i], counts[i]);
+        }
+        return strategies;
+    }
+
+    // 按 id 取策略但不计数，供 CachingDiscountStrategy 这类放在注册表前面的装饰器解析实际的策略
+    DiscountStrategy resolve(int typeId) {
+        return table.get().lookup(typeId, 0);
+    }
+
+    // 类型的版本号；先读版本号再 resolve()，两次读之间发生替换时拿到的版本号只会偏旧，不会把新版本号配上旧策略
+    long getTypeVersion(int typeId) {
+        return table.get().typeVersion(typeId);
+    }
+
+    public DiscountStrategy getStrategy(String type) {
+        return getStrategy(typeIdOf(type));
+    }
+
+    // 整体替换所有策略，返回新版本号
+    public long swap(Map<String, DiscountStrategy> strategies, DiscountStrategy fallback) {
+        while (true) {
+            StrategyTable current = table.get();
+            StrategyTable next = buildTable(current, strategies, fallback);
+            if (table.compareAndSet(current, next)) {
+                return next.version;
+            }
+        }
+    }
+
+    // 只有当前版本等于 expectedVersion 时才替换，返回是否替换成功
+    public boolean compareAndSwap(long expectedVersion, Map<String, DiscountStrategy> strategies, DiscountStrategy fallback) {
+        StrategyTable current = table.get();
+        if (current.version != expectedVersion) {
+            return false;
+        }
+        return table.compareAndSet(current, buildTable(current, strategies, fallback));
+    }
+
+    public long getVersion() {
+        return table.get().version;
+    }
+
+    // 每种类型的调用次数，计数跨版本累计；兜底策略的调用次数记在 "*" 下
+    public Map<String, Long> getInvocationCounts() {
+        StrategyTable current = table.get();
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : typeIds.entrySet()) {
+            int id = entry.getValue();
+            if (id < current.counters.length && current.strategies[id] != null) {
+                counts.put(entry.getKey(), current.counters[id].sum());
+            }
+        }
+        counts.put("*", current.fallbackCounter.sum());
+        return Collections.unmodifiableMap(counts);
+    }
+
+    private StrategyTable buildTable(StrategyTable current, Map<String, DiscountStrategy> strategies, DiscountStrategy fallback) {
+        for (String type : strategies.keySet()) {
+            intern(type);
+        }
+        int size = nextTypeId.get();
+        DiscountStrategy[] array = new DiscountStrategy[size];
+        LongAdder[] counters = new LongAdder[size];
+        for (Map.Entry<String, DiscountStrategy> entry : strategies.entrySet()) {
+            if (entry.getValue() == null) {
+                throw new IllegalArgumentException("strategy can not be null: " + entry.getKey());
+            }
+            array[intern(entry.getKey())] = entry.getValue();
+        }
+        long version = current.version + 1;
+        long[] typeVersions = new long[size];
+        for (int id = 0; id < size; id++) {
+            // 计数器沿用旧表中的实例，替换策略不会清零计数
+            counters[id] = id < current.counters.length ? current.counters[id] : new LongAdder();
+            DiscountStrategy effective = array[id] != null ? array[id] : fallback;
+            typeVersions[id] = id < current.typeVersions.length && current.effective(id) == effective
+                    ? current.typeVersions[id] : version;
+        }
+        long fallbackVersion = current.fallback == fallback ? current.fallbackVersion : version;
+        return new StrategyTable(version, array, counters, typeVersions, fallback, fallbackVersion, current.fallbackCounter);
+    }
+
+    private static class StrategyTable {
+        private final long version;
+        private final DiscountStrategy[] strategies;
+        private final LongAdder[] counters;
+        // typeVersions[id] 是类型 id 实际使用的策略最近一次变化时的表版本
+        private final long[] typeVersions;
+        private final DiscountStrategy fallback;
+        // 没有 id 的类型使用的版本号，兜底策略变化时更新
+        private final long fallbackVersion;
+        private final LongAdder fallbackCounter;
+
+        StrategyTable(long version, DiscountStrategy[] strategies, LongAdder[] counters, long[] typeVersions,
+                      DiscountStrategy fallback, long fallbackVersion, LongAdder fallbackCounter) {
+            this.version = version;
+            this.strategies = strategies;
+            this.counters = counters;
+            this.typeVersions = typeVersions;
+            this.fallback = fallback;
+            this.fallbackVersion = fallbackVersion;
+            this.fallbackCounter = fallbackCounter;
+        }
+
+        DiscountStrategy lookup(int typeId, int count) {
+            if (typeId >= 0 && typeId < strategies.length) {
+                DiscountStrategy strategy = strategies[typeId];
+                if (strategy != null) {
+                    if (count > 0) {
+                        counters[typeId].add(count);
+                    }
+                    return strategy;
+                }
+            }
+            if (fallback == null) {
+                throw new IllegalArgumentException("no discount strategy for type id: " + typeId);
+            }
+            if (count > 0) {
+                fallbackCounter.add(count);
+            }
+            return fallback;
+        }
+
+        DiscountStrategy effective(int typeId) {
+            return strategies[typeId] != null ? strategies[typeId] : fallback;
+        }
+
+        long typeVersion(int typeId) {
+            return typeId >= 0 && typeId < typeVersions.length ? typeVersions[typeId] : fallbackVersion;
+        }
+    }
+}
@@ -13,7 +13,6 @@ package com.zelon.designpattern.behavioral.strategy;
 3. 策略使用
  */
 
-import java.util.HashMap;
 import java.util.Map;
 
 public class OrderService {
@@ -33,14 +32,34 @@ public class OrderService {
 
     // 使用策略模式之后
     public double discount(Order order){
-        String type = order.getType();
-        DiscountStrategy strategy = DiscountStrategyFactory.getDiscountStrategy(type);
+        // 订单创建时已经把类型字符串转换成了 id，这里只需要一次数组访问；
+        // 创建订单时还没有注册的类型按字符串再查一次，仍然未知时使用兜底策略
+        int typeId = order.getTypeId();
+        DiscountStrategy strategy = typeId >= 0
+                ? DiscountStrategyFactory.getDiscountStrategy(typeId)
+                : DiscountStrategyFactory.getDiscountStrategy(order.getType());
         return strategy.calculate(order);
     }
+
+    // 批量计算：按列传入订单类型下标和金额，结果写入 results，parallel 为 true 时使用多核计算
+    public void discountBulk(String[] typeDictionary, int[] typeCodes, double[] amounts, double[] results, boolean parallel){
+        BulkDiscountCalculator.calculate(typeDictionary, typeCodes, amounts, results, parallel);
+    }
 }
 // 定义策略
 interface DiscountStrategy{
     double calculate(Order order);
+
+    // 批量计算 indexes 中前 count 个下标对应的金额。scratch 是调用方为这一批复用的订单，类型已经设置好，
+    // 默认逐个写入金额后调用 calculate()，所以任何策略都支持批量计算（calculate() 不能保存传入的订单）；
+    // 只依赖金额的策略可以重写成紧凑的循环
+    default void calculateAll(Order scratch, double[] amounts, int[] indexes, int count, double[] results){
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            scratch.setAmount(amounts[index]);
+            results[index] = calculate(scratch);
+        }
+    }
 }
 
 class VipDiscountStrategy implements DiscountStrategy{
@@ -48,6 +67,14 @@ class VipDiscountStrategy implements DiscountStrategy{
     public double calculate(Order order) {
         return order.getAmount() * 0.9;
     }
+
+    @Override
+    public void calculateAll(Order scratch, double[] amounts, int[] indexes, int count, double[] results) {
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            results[index] = amounts[index] * 0.9;
+        }
+    }
 }
 
 class NormalDiscountStrategy implements DiscountStrategy{
@@ -55,33 +82,75 @@ class NormalDiscountStrategy implements DiscountStrategy{
     public double calculate(Order order) {
         return order.getAmount();
     }
+
+    @Override
+    public void calculateAll(Order scratch, double[] amounts, int[] indexes, int count, double[] results) {
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            results[index] = amounts[index];
+        }
+    }
 }
 
 // 创建策略
 // 如果策略是没有状态的，那么可以使用缓存的方式实现策略工厂，
 // 否则，少量的策略可以通过简单工厂实现，即便会出现少量的if-else也可以接受，
 // 但如果策略状态量多，那么就得使用工厂方法模式
+// 缓存放在可热替换的注册表中，运行时可以通过 getRegistry().swap() 整体替换策略，不需要重新部署；
+// 未知类型按普通价格计算
 class DiscountStrategyFactory{
-    private static final Map<String, DiscountStrategy> cachedStrategies = new HashMap<>();
+    private static final DiscountStrategyRegistry registry = new DiscountStrategyRegistry();
     static {
-        cachedStrategies.put("vip", new VipDiscountStrategy());
-        cachedStrategies.put("normal", new NormalDiscountStrategy());
+        registry.swap(Map.of(
+                "vip", new VipDiscountStrategy(),
+                "normal", new NormalDiscountStrategy()), new NormalDiscountStrategy());
     }
     public static DiscountStrategy getDiscountStrategy(String type){
-        return cachedStrategies.get(type);
+        return registry.getStrategy(type);
+    }
+
+    public static DiscountStrategy getDiscountStrategy(int typeId){
+        return registry.getStrategy(typeId);
+    }
+
+    public static DiscountStrategyRegistry getRegistry(){
+        return registry;
     }
 }
 
 class Order {
     private String type;
     private double amount;
+    // 类型字符串在注册表中的 id，创建订单时查找一次，未知类型为 -1（不会为它分配 id）
+    private int typeId = -1;
+
+    Order() {
+    }
+
+    Order(String type, double amount) {
+        this.type = type;
+        this.amount = amount;
+        if (type != null) {
+            this.typeId = DiscountStrategyFactory.getRegistry().typeIdOf(type);
+        }
+    }
+
     public String getType() {
         return type;
     }
 
+    public int getTypeId() {
+        return typeId;
+    }
+
     public double getAmount() {
         return amount;
     }
 
+    // 只给批量计算复用的临时订单使用
+    void setAmount(double amount) {
+        this.amount = amount;
+    }
+
     // ...
 }
\ No newline at end of file
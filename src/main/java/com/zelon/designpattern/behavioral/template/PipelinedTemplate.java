@@ -0,0 +1,303 @@
+package com.zelon.designpattern.behavioral.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+流水线模式的模板方法：ETL 任务中步骤1是 IO 密集型（读数据），步骤2是 CPU 密集型（转换），
+串行执行时总有一种资源是空闲的。
+批量处理时每个步骤作为一个独立的阶段，有自己的线程池，阶段之间用有界队列连接，
+第 N+1 个数据的步骤1 和第 N 个数据的步骤2 可以同时执行；队列满时上游阻塞，形成背压。
+对每一个数据来说，仍然严格按照模板规定的 步骤1 -> 步骤2 的顺序执行，结果按输入顺序返回。
+TemplateDemo 的子类可以通过 TemplateDemo.templateMethod(List, ...) 按这种方式批量执行。
+ */
+public abstract class PipelinedTemplate<I, M, O> implements AutoCloseable {
+    private final int stage1Threads;
+    private final int stage2Threads;
+    private final int queueCapacity;
+    private final ExecutorService stage1Pool;
+    private final ExecutorService stage2Pool;
+    private final StageMetrics[] metrics = {new StageMetrics("primitiveOperation1"), new StageMetrics("primitiveOperation2")};
+    // 同一时间只能处理一批，否则两批会共用线程池并互相覆盖指标绑定的队列
+    private final AtomicBoolean batchRunning = new AtomicBoolean();
+
+    protected PipelinedTemplate(int stage1Threads, int stage2Threads, int queueCapacity) {
+        if (stage1Threads <= 0 || stage2Threads <= 0) {
+            throw new IllegalArgumentException("stage threads must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        this.stage1Threads = stage1Threads;
+        this.stage2Threads = stage2Threads;
+        this.queueCapacity = queueCapacity;
+        this.stage1Pool = Executors.newFixedThreadPool(stage1Threads);
+        this.stage2Pool = Executors.newFixedThreadPool(stage2Threads);
+    }
+
+    // 单个数据：和 TemplateDemo.templateMethod() 一样，按固定步骤执行
+    public final O templateMethod(I item) {
+        return primitiveOperation2(primitiveOperation1(item));
+    }
+
+    // 批量数据：两个步骤流水线执行，任何一个步骤抛出异常时整批失败；同一个实例同一时间只处理一批，并发调用抛出异常。
+    // 调用线程被中断时，已经在执行的步骤会执行完，其余数据不再处理，所有工作线程退出后抛出 InterruptedException
+    public final List<O> templateMethod(List<I> items) throws InterruptedException {
+        if (!batchRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("another batch is running on this pipeline");
+        }
+        try {
+            return runBatch(items);
+        } finally {
+            batchRunning.set(false);
+        }
+    }
+
+    private List<O> runBatch(List<I> items) throws InterruptedException {
+        BlockingQueue<WorkItem> inputQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<WorkItem> middleQueue = new ArrayBlockingQueue<>(queueCapacity);
+        AtomicReferenceArray<O> results = new AtomicReferenceArray<>(items.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicInteger runningStage1 = new AtomicInteger(stage1Threads);
+        CountDownLatch finished = new CountDownLatch(stage2Threads);
+        metrics[0].bind(inputQueue);
+        metrics[1].bind(middleQueue);
+
+        for (int i = 0; i < stage1Threads; i++) {
+            stage1Pool.execute(() -> {
+                try {
+                    runStage(inputQueue, middleQueue, failure, metrics[0], work -> {
+                        @SuppressWarnings("unchecked")
+                        I input = (I) work.value;
+                        work.value = primitiveOperation1(input);
+                    });
+                } finally {
+                    // 最后一个退出的步骤1 线程通知步骤2 的所有线程结束
+                    if (runningStage1.decrementAndGet() == 0) {
+                        for (int j = 0; j < stage2Threads; j++) {
+                            putQuietly(middleQueue, WorkItem.END, metrics[1]);
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < stage2Threads; i++) {
+            stage2Pool.execute(() -> {
+                try {
+                    runStage(middleQueue, null, failure, metrics[1], work -> {
+                        @SuppressWarnings("unchecked")
+                        M middle = (M) work.value;
+                        results.set(work.index, primitiveOperation2(middle));
+                    });
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        InterruptedException interrupted = null;
+        boolean interruptedAgain = false;
+        try {
+            for (int i = 0; i < items.size() && failure.get() == null; i++) {
+                inputQueue.put(new WorkItem(i, items.get(i)));
+                metrics[0].recordDepth(inputQueue.size());
+            }
+        } catch (InterruptedException e) {
+            // 标记失败后工作线程只消费队列、不再执行步骤，队列很快会腾出位置放结束标记
+            failure.compareAndSet(null, e);
+            interrupted = e;
+        } finally {
+            // 无论是否出错都要发送结束标记并等待工作线程退出，否则它们会永远阻塞在 take() 上
+            for (int i = 0; i < stage1Threads; i++) {
+                interruptedAgain |= putUninterruptibly(inputQueue, WorkItem.END);
+            }
+            interruptedAgain |= awaitUninterruptibly(finished);
+        }
+        if (interrupted != null) {
+            throw interrupted;
+        }
+        if (interruptedAgain) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure.get() != null) {
+            throw new IllegalStateException("pipeline failed", failure.get());
+        }
+        List<O> output = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            output.add(results.get(i));
+        }
+        return output;
+    }
+
+    public List<StageMetrics> getMetrics() {
+        return List.of(metrics);
+    }
+
+    @Override
+    public void close() {
+        stage1Pool.shutdown();
+        stage2Pool.shutdown();
+    }
+
+    protected abstract M primitiveOperation1(I item);
+    protected abstract O primitiveOperation2(M middle);
+
+    // downstream 不为 null 时，步骤执行完把数据交给下一个阶段；交接时队列满而阻塞的时间单独记录，不算作忙碌时间
+    private void runStage(BlockingQueue<WorkItem> queue, BlockingQueue<WorkItem> downstream, AtomicReference<Throwable> failure,
+                          StageMetrics stageMetrics, StageStep step) {
+        while (true) {
+            WorkItem work;
+            try {
+                work = queue.take();
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, e);
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (work == WorkItem.END) {
+                return;
+            }
+            // 已经失败时只消费队列，不再执行步骤，让上游尽快结束
+            if (failure.get() != null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                step.run(work);
+                long end = System.nanoTime();
+                stageMetrics.recordProcessed(end - start);
+                if (downstream != null) {
+                    // 只有步骤1 有下游，下游队列的深度记在步骤2 的指标上
+                    putQuietly(downstream, work, metrics[1]);
+                    stageMetrics.recordBlocked(System.nanoTime() - end);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }
+    }
+
+    private static void putQuietly(BlockingQueue<WorkItem> queue, WorkItem work, StageMetrics stageMetrics) {
+        try {
+            queue.put(work);
+            stageMetrics.recordDepth(queue.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("pipeline interrupted", e);
+        }
+    }
+
+    // 返回等待期间是否被中断过
+    private static boolean putUninterruptibly(BlockingQueue<WorkItem> queue, WorkItem work) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(work);
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private static boolean awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                return interrupted;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private interface StageStep {
+        void run(WorkItem work);
+    }
+
+    private static class WorkItem {
+        private static final WorkItem END = new WorkItem(-1, null);
+        private final int index;
+        private Object value;
+
+        WorkItem(int index, Object value) {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    // 阶段指标：处理数量、忙碌时间、交接阻塞时间、输入队列的当前深度和最大深度
+    public static class StageMetrics {
+        private final String name;
+        private final LongAdder processed = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final AtomicInteger maxQueueDepth = new AtomicInteger();
+        private volatile BlockingQueue<?> queue;
+
+        StageMetrics(String name) {
+            this.name = name;
+        }
+
+        void bind(BlockingQueue<?> queue) {
+            this.queue = queue;
+        }
+
+        void recordProcessed(long nanos) {
+            processed.increment();
+            busyNanos.add(nanos);
+        }
+
+        void recordBlocked(long nanos) {
+            blockedNanos.add(nanos);
+        }
+
+        void recordDepth(int depth) {
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getProcessed() {
+            return processed.sum();
+        }
+
+        // 单个线程每秒能处理的数量，只按执行步骤的时间计算，不包含交接阻塞的时间
+        public double getThroughputPerThread() {
+            long busy = busyNanos.sum();
+            return busy == 0 ? 0 : processed.sum() * 1_000_000_000.0 / busy;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        // 下游队列已满时阻塞在交接上的总时间（背压），值大说明瓶颈在下游阶段
+        public long getBlockedNanos() {
+            return blockedNanos.sum();
+        }
+
+        public int getQueueDepth() {
+            BlockingQueue<?> current = queue;
+            return current == null ? 0 : current.size();
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+    }
+}
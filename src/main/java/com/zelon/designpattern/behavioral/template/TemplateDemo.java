@@ -1,5 +1,7 @@
 package com.zelon.designpattern.behavioral.template;
 
+import java.util.List;
+
 /*
 模板方法模式
 一、使用场景
@@ -22,9 +24,49 @@ Spring 中提供的各种 template（JDBC Template、RedisTemplate）就用到
 public abstract class TemplateDemo {
     public final void templateMethod() {
         // 模板方法不能重写，必须按照既定的步骤执行，但是具体的步骤可以由之类自行扩展
+        if (TemplateInstrumentation.isEnabled()) {
+            // 开启统计时记录每个步骤的耗时和内存分配
+            TemplateInstrumentation.run(this, 0, this::primitiveOperation1);
+            TemplateInstrumentation.run(this, 1, this::primitiveOperation2);
+            return;
+        }
         primitiveOperation1();
         primitiveOperation2();
     }
+
+    /*
+    批量执行一组模板：步骤1 是 IO 密集型、步骤2 是 CPU 密集型时，用 PipelinedTemplate 把两个步骤放到各自的线程池中流水线执行，
+    第 N+1 个对象的步骤1 和第 N 个对象的步骤2 可以同时执行，每个对象仍然先执行步骤1 再执行步骤2。
+    线程池只在这一批中使用，返回之前关闭。
+     */
+    public static void templateMethod(List<? extends TemplateDemo> templates, int stage1Threads, int stage2Threads,
+                                      int queueCapacity) throws InterruptedException {
+        try (PipelinedTemplate<TemplateDemo, TemplateDemo, TemplateDemo> pipeline =
+                     new PipelinedTemplate<>(stage1Threads, stage2Threads, queueCapacity) {
+                         @Override
+                         protected TemplateDemo primitiveOperation1(TemplateDemo template) {
+                             template.runStep(0);
+                             return template;
+                         }
+
+                         @Override
+                         protected TemplateDemo primitiveOperation2(TemplateDemo template) {
+                             template.runStep(1);
+                             return template;
+                         }
+                     }) {
+            pipeline.templateMethod(List.copyOf(templates));
+        }
+    }
+
+    private void runStep(int step) {
+        Runnable operation = step == 0 ? this::primitiveOperation1 : this::primitiveOperation2;
+        if (TemplateInstrumentation.isEnabled()) {
+            TemplateInstrumentation.run(this, step, operation);
+        } else {
+            operation.run();
+        }
+    }
     // 具体实现步骤子类必须重写
     protected abstract void primitiveOperation1();
     protected abstract void primitiveOperation2();
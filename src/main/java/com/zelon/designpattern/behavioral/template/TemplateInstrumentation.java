@@ -0,0 +1,148 @@
+package com.zelon.designpattern.behavioral.template;
+
+import com.zelon.designpattern.metrics.Histogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+模板方法的分步骤耗时统计：线上无法知道 TemplateDemo 某个子类的哪一步慢。
+开启后，templateMethod() 会按 "子类 + 步骤" 记录每个基本操作的墙钟时间、CPU 时间和分配的字节数（来自 ThreadMXBean），
+写入无锁的直方图，可以随时通过 getStats() 读取。
+关闭时 templateMethod() 只多读一次 volatile 变量，几乎没有开销。
+ */
+public final class TemplateInstrumentation {
+    static final int STEP_COUNT = 2;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    // 分配字节数是 HotSpot 的扩展接口，其他 JVM 上不统计
+    private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN =
+            THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) THREAD_MX_BEAN : null;
+    private static final ConcurrentHashMap<Class<?>, StepStats[]> STATS = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = false;
+
+    private TemplateInstrumentation() {}
+
+    public static void enable() {
+        if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+            THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+        }
+        if (ALLOCATION_MX_BEAN != null && ALLOCATION_MX_BEAN.isThreadAllocatedMemorySupported()) {
+            ALLOCATION_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+        }
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void reset() {
+        STATS.clear();
+    }
+
+    // 子类名 -> 每个步骤的统计
+    public static Map<String, List<StepSnapshot>> getStats() {
+        Map<String, List<StepSnapshot>> result = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, StepStats[]> entry : STATS.entrySet()) {
+            StepStats[] steps = entry.getValue();
+            StepSnapshot[] snapshots = new StepSnapshot[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                snapshots[i] = steps[i].snapshot("primitiveOperation" + (i + 1));
+            }
+            result.put(entry.getKey().getName(), List.of(snapshots));
+        }
+        return result;
+    }
+
+    // 按步骤执行并记录，step 从 0 开始
+    static void run(TemplateDemo template, int step, Runnable operation) {
+        long cpuStart = cpuTime();
+        long allocatedStart = allocatedBytes();
+        long wallStart = System.nanoTime();
+        operation.run();
+        long wall = System.nanoTime() - wallStart;
+        long cpu = cpuStart < 0 ? -1 : cpuTime() - cpuStart;
+        long allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+        statsOf(template.getClass())[step].record(wall, cpu, allocated);
+    }
+
+    private static StepStats[] statsOf(Class<?> type) {
+        StepStats[] steps = STATS.get(type);
+        if (steps == null) {
+            steps = STATS.computeIfAbsent(type, t -> {
+                StepStats[] created = new StepStats[STEP_COUNT];
+                for (int i = 0; i < STEP_COUNT; i++) {
+                    created[i] = new StepStats();
+                }
+                return created;
+            });
+        }
+        return steps;
+    }
+
+    private static long cpuTime() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATION_MX_BEAN == null ? -1 : ALLOCATION_MX_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    private static class StepStats {
+        private final Histogram wallNanos = new Histogram();
+        private final Histogram cpuNanos = new Histogram();
+        private final Histogram allocatedBytes = new Histogram();
+
+        void record(long wall, long cpu, long allocated) {
+            wallNanos.record(wall);
+            if (cpu >= 0) {
+                cpuNanos.record(cpu);
+            }
+            if (allocated >= 0) {
+                allocatedBytes.record(allocated);
+            }
+        }
+
+        StepSnapshot snapshot(String step) {
+            return new StepSnapshot(step, wallNanos.snapshot(), cpuNanos.snapshot(), allocatedBytes.snapshot());
+        }
+    }
+
+    public static class StepSnapshot {
+        private final String step;
+        private final Histogram.Snapshot wallNanos;
+        private final Histogram.Snapshot cpuNanos;
+        private final Histogram.Snapshot allocatedBytes;
+
+        StepSnapshot(String step, Histogram.Snapshot wallNanos, Histogram.Snapshot cpuNanos, Histogram.Snapshot allocatedBytes) {
+            this.step = step;
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getStep() {
+            return step;
+        }
+
+        public Histogram.Snapshot getWallNanos() {
+            return wallNanos;
+        }
+
+        public Histogram.Snapshot getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public Histogram.Snapshot getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.zelon.designpattern.creational.builder;
+
+import com.zelon.designpattern.metrics.Histogram;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ResourcePool 的运行指标：池打满时只能看到请求变慢，需要知道是在等资源还是资源被占用太久。
+1. 借出等待时间、持有时间写入共用的无锁直方图 Histogram，
+   有许可且有空闲资源时借出等待时间记为 0，一次借出和归还只调用两次 System.nanoTime()
+   记录指标大约让借出和归还的吞吐减半，所以默认关闭，需要排查时通过 ResourcePoolConfig 开启
+2. 创建、销毁、借出超时等计数使用 LongAdder，不在线程之间争用同一个缓存行
+3. snapshot() 只读取原子变量，不加锁，不会暂停借出线程；各项数据之间不保证是同一时刻的值
+ */
+public final class PoolMetrics {
+    final Histogram borrowWaitNanos = new Histogram();
+    final Histogram holdNanos = new Histogram();
+    final LongAdder creates = new LongAdder();
+    final LongAdder destroys = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder leaks = new LongAdder();
+
+    PoolMetrics() {}
+
+    // 持有时间超过阈值的资源，stackTrace 是借出资源时的调用栈
+    public static class LeakReport {
+        private final String resource;
+        private final String threadName;
+        private final long heldMillis;
+        private final StackTraceElement[] stackTrace;
+
+        LeakReport(String resource, String threadName, long heldMillis, StackTraceElement[] stackTrace) {
+            this.resource = resource;
+            this.threadName = threadName;
+            this.heldMillis = heldMillis;
+            this.stackTrace = stackTrace;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        // 发现泄漏时已经持有的时间
+        public long getHeldMillis() {
+            return heldMillis;
+        }
+
+        public StackTraceElement[] getStackTrace() {
+            return stackTrace.clone();
+        }
+    }
+
+    public static class Snapshot {
+        private final int activeCount;
+        private final int idleCount;
+        private final int waitingCount;
+        private final int totalCount;
+        private final int maxTotal;
+        private final long createCount;
+        private final long destroyCount;
+        private final long timeoutCount;
+        private final long leakCount;
+        private final Histogram.Snapshot borrowWaitNanos;
+        private final Histogram.Snapshot holdNanos;
+        private final List<LeakReport> leakSuspects;
+
+        Snapshot(ResourcePool<?> pool, PoolMetrics metrics, int waitingCount, List<LeakReport> leakSuspects) {
+            this.activeCount = pool.getActiveCount();
+            this.idleCount = pool.getIdleCount();
+            this.waitingCount = waitingCount;
+            this.totalCount = pool.getTotalCount();
+            this.maxTotal = pool.getConfig().getMaxTotal();
+            this.createCount = metrics.creates.sum();
+            this.destroyCount = metrics.destroys.sum();
+            this.timeoutCount = metrics.timeouts.sum();
+            this.leakCount = metrics.leaks.sum();
+            this.borrowWaitNanos = metrics.borrowWaitNanos.snapshot();
+            this.holdNanos = metrics.holdNanos.snapshot();
+            this.leakSuspects = leakSuspects;
+        }
+
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        public int getIdleCount() {
+            return idleCount;
+        }
+
+        // 正在等待许可的借出线程数
+        public int getWaitingCount() {
+            return waitingCount;
+        }
+
+        public int getTotalCount() {
+            return totalCount;
+        }
+
+        // 借出中的资源占 maxTotal 的比例
+        public double getUtilization() {
+            return (double) activeCount / maxTotal;
+        }
+
+        public long getCreateCount() {
+            return createCount;
+        }
+
+        public long getDestroyCount() {
+            return destroyCount;
+        }
+
+        public long getTimeoutCount() {
+            return timeoutCount;
+        }
+
+        // 累计发现的疑似泄漏次数
+        public long getLeakCount() {
+            return leakCount;
+        }
+
+        public Histogram.Snapshot getBorrowWaitNanos() {
+            return borrowWaitNanos;
+        }
+
+        public Histogram.Snapshot getHoldNanos() {
+            return holdNanos;
+        }
+
+        // 最近一轮检测时仍未归还的疑似泄漏资源
+        public List<LeakReport> getLeakSuspects() {
+            return leakSuspects;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.zelon.designpattern.creational.builder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+从 ResourcePool 借出的资源句柄：每次借出都创建一个新的句柄，只有一个 volatile 字段，归还后句柄作废。
+使用 try-with-resources 归还，重复归还会抛出异常；资源被再次借出后，旧句柄的 close()/invalidate()/get()
+同样会抛出异常，不会归还或销毁别人正在使用的资源，避免同一个资源被两个调用方同时持有。
+ */
+public final class PooledResource<T> implements AutoCloseable {
+    private static final VarHandle RETURNED;
+
+    static {
+        try {
+            RETURNED = MethodHandles.lookup().findVarHandle(PooledResource.class, "returned", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ResourcePool<T> pool;
+    private final ResourcePool.Slot<T> slot;
+    private volatile boolean returned;
+
+    PooledResource(ResourcePool<T> pool, ResourcePool.Slot<T> slot) {
+        this.pool = pool;
+        this.slot = slot;
+    }
+
+    public T get() {
+        if (returned) {
+            throw new IllegalStateException("resource has been returned to pool");
+        }
+        return slot.resource();
+    }
+
+    // 归还给池
+    @Override
+    public void close() {
+        markReturned();
+        pool.release(slot);
+    }
+
+    // 资源已损坏时调用，直接销毁而不放回池中
+    public void invalidate() {
+        markReturned();
+        pool.invalidate(slot);
+    }
+
+    private void markReturned() {
+        if (!RETURNED.compareAndSet(this, false, true)) {
+            throw new IllegalStateException("resource has already been returned");
+        }
+        slot.markReturned();
+    }
+}
@@ -0,0 +1,15 @@
+package com.zelon.designpattern.creational.builder;
+
+/*
+ResourcePool 创建、校验和销毁资源的回调，例如数据库连接的 connect()/isValid()/close()。
+ */
+public interface ResourceFactory<T> {
+    T create() throws Exception;
+
+    default boolean validate(T resource) {
+        return true;
+    }
+
+    default void destroy(T resource) {
+    }
+}
@@ -0,0 +1,594 @@
+package com.zelon.designpattern.creational.builder;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+根据 ResourcePoolConfig 创建的通用资源池。
+1. 空闲资源放在无锁栈（Treiber stack）中，借出和归还都是一次 CAS，后进先出，刚用过的资源缓存更热
+   每次借出分配一个 PooledResource 句柄、每次归还分配一个栈节点，都是很小的短命对象，旧句柄归还后作废
+2. maxTotal 由 Semaphore 许可控制：有许可时 tryAcquire() 只是一次 CAS，没有许可时才按超时时间挂起等待
+3. 全程不使用 synchronized，等待时线程被 park 而不是阻塞在监视器上，虚拟线程不会被钉住载体线程
+4. 后台维护（evictionIntervalMillis > 0 时启用）：
+   - 启动时用 warmUpParallelism 个线程并行创建 minIdle 个资源，完成后 whenReady() 返回的 future 完成
+   - 定时遍历空闲栈，空闲超过 idleTimeoutMillis 且超出 maxIdle 的资源被回收，其余资源逐个校验，再补齐到 minIdle
+   - 校验不在借出路径上执行：维护线程通过节点状态的 CAS 原地占用资源，不需要把资源移出空闲栈
+   - 空闲时间按维护线程每轮更新的粗粒度时钟计算，归还时不调用 System.nanoTime()
+   未启用时，归还时空闲资源已达到 maxIdle 则直接销毁
+5. 运行指标见 PoolMetrics，通过 getMetrics() 读取；
+   开启泄漏检测后，借出时记录一个 Throwable 作为借出位置，只保存原始的栈帧信息，
+   维护线程发现持有时间超过阈值的资源时才把它转换成调用栈；未开启时借出不做任何记录
+ */
+public class ResourcePool<T> implements AutoCloseable {
+    // 拿到许可时没有等待，借出等待时间从开始创建资源算起
+    private static final long NO_WAIT = Long.MIN_VALUE;
+    // 名额被正在预热或校验的资源占用时，等待它们回到空闲栈的间隔
+    private static final long RETRY_PARK_NANOS = 100_000;
+    private final ResourcePoolConfig config;
+    private final ResourceFactory<T> factory;
+    // 每个借出的资源占用一个许可
+    private final Semaphore permits;
+    private final AtomicReference<Node<T>> idleHead = new AtomicReference<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    // 当前存活（空闲 + 借出 + 正在创建或校验）的资源数，不超过 maxTotal
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final ScheduledExecutorService maintainer;
+    // 维护线程每轮更新一次的粗粒度时钟，误差不超过一个维护间隔
+    private volatile long clockNanos = System.nanoTime();
+    private volatile boolean closed;
+    private final PoolMetrics metrics = new PoolMetrics();
+    // 关闭指标且不检测泄漏时，借出和归还都不调用 System.nanoTime()
+    private final boolean timed;
+    private final long leakThresholdNanos;
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    // 开启泄漏检测时记录所有存活的资源，只在创建和销毁时修改
+    private final Set<Slot<T>> resources;
+    private volatile List<PoolMetrics.LeakReport> leakSuspects = Collections.emptyList();
+
+    public ResourcePool(ResourcePoolConfig config, ResourceFactory<T> factory) {
+        if (config == null || factory == null) {
+            throw new IllegalArgumentException("config and factory can not be null");
+        }
+        this.config = config;
+        this.factory = factory;
+        this.permits = new Semaphore(config.getMaxTotal());
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getLeakDetectionThresholdMillis());
+        this.timed = config.isMetricsEnabled() || leakThresholdNanos > 0;
+        this.resources = leakThresholdNanos > 0 ? ConcurrentHashMap.newKeySet() : null;
+        if (config.getEvictionIntervalMillis() > 0) {
+            this.maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "pool-" + config.getName() + "-maintainer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintainer.scheduleWithFixedDelay(this::maintain, config.getEvictionIntervalMillis(),
+                    config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.maintainer = null;
+        }
+        warmUp();
+    }
+
+    // 预热完成（minIdle 个资源已创建）时完成；创建失败时异常完成，池仍然可用
+    public CompletableFuture<Void> whenReady() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    public PooledResource<T> borrow() throws InterruptedException {
+        checkOpen();
+        long start = NO_WAIT;
+        if (!permits.tryAcquire()) {
+            start = timed ? System.nanoTime() : NO_WAIT;
+            waitingCount.incrementAndGet();
+            try {
+                permits.acquire();
+            } finally {
+                waitingCount.decrementAndGet();
+            }
+        }
+        return take(start, Long.MAX_VALUE);
+    }
+
+    public PooledResource<T> borrow(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        checkOpen();
+        long start = NO_WAIT;
+        long remainingNanos = unit.toNanos(timeout);
+        if (!permits.tryAcquire()) {
+            long waitStart = System.nanoTime();
+            start = timed ? waitStart : NO_WAIT;
+            boolean acquired;
+            waitingCount.incrementAndGet();
+            try {
+                acquired = permits.tryAcquire(remainingNanos, TimeUnit.NANOSECONDS);
+            } finally {
+                waitingCount.decrementAndGet();
+            }
+            if (!acquired) {
+                throw timeout(timeout, unit);
+            }
+            remainingNanos -= System.nanoTime() - waitStart;
+        }
+        PooledResource<T> pooled = take(start, remainingNanos);
+        if (pooled == null) {
+            throw timeout(timeout, unit);
+        }
+        return pooled;
+    }
+
+    private TimeoutException timeout(long timeout, TimeUnit unit) {
+        metrics.timeouts.increment();
+        return new TimeoutException("pool " + config.getName() + " exhausted, waited " + timeout + " " + unit);
+    }
+
+    // 已持有许可：优先复用空闲资源，没有则新建；在 remainingNanos 内拿不到资源时释放许可并返回 null
+    private PooledResource<T> take(long start, long remainingNanos) throws InterruptedException {
+        try {
+            checkOpen();
+            Slot<T> pooled;
+            long deadline = 0;
+            boolean waiting = false;
+            while ((pooled = pollIdle()) == null) {
+                if (timed && start == NO_WAIT) {
+                    start = System.nanoTime();
+                }
+                if (reserveTotal()) {
+                    pooled = create();
+                    break;
+                }
+                // 剩余名额被正在预热或校验的资源占用，它们很快会回到空闲队列；等待仍然受借出超时和中断的约束
+                long now = System.nanoTime();
+                if (!waiting) {
+                    waiting = true;
+                    deadline = remainingNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + remainingNanos;
+                }
+                if (deadline != Long.MAX_VALUE && now - deadline >= 0) {
+                    permits.release();
+                    return null;
+                }
+                LockSupport.parkNanos(deadline == Long.MAX_VALUE ? RETRY_PARK_NANOS
+                        : Math.min(RETRY_PARK_NANOS, deadline - now));
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                checkOpen();
+            }
+            long now = 0;
+            if (timed) {
+                now = System.nanoTime();
+                if (config.isMetricsEnabled()) {
+                    metrics.borrowWaitNanos.record(start == NO_WAIT ? 0 : now - start);
+                }
+            }
+            if (resources != null) {
+                pooled.markBorrowed(now, Thread.currentThread(), new Throwable("borrowed from pool " + config.getName()));
+            } else {
+                pooled.markBorrowed(now, null, null);
+            }
+            return new PooledResource<>(this, pooled);
+        } catch (RuntimeException | InterruptedException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private boolean reserveTotal() {
+        int maxTotal = config.getMaxTotal();
+        int count;
+        do {
+            count = totalCount.get();
+            if (count >= maxTotal) {
+                return false;
+            }
+        } while (!totalCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    // 调用前已通过 reserveTotal() 占用名额
+    private Slot<T> create() {
+        try {
+            Slot<T> pooled = new Slot<>(factory.create());
+            metrics.creates.increment();
+            if (resources != null) {
+                resources.add(pooled);
+            }
+            return pooled;
+        } catch (Exception e) {
+            totalCount.decrementAndGet();
+            throw new IllegalStateException("failed to create resource for pool " + config.getName(), e);
+        }
+    }
+
+    void release(Slot<T> pooled) {
+        recordHold(pooled);
+        // 启用后台维护时超出 maxIdle 的资源等空闲超时后再回收，避免负载抖动时反复创建销毁
+        if (closed || (maintainer == null && !reserveIdleSlot())) {
+            destroy(pooled);
+        } else {
+            if (maintainer != null) {
+                idleCount.incrementAndGet();
+            }
+            pushIdle(new Node<>(pooled, clockNanos));
+            // 关闭时可能已经清空过空闲队列，这里再清理一次，避免资源泄漏
+            if (closed) {
+                drainIdle();
+            }
+        }
+        // 先放回空闲队列再释放许可，拿到许可的线程一定能看到这个资源
+        permits.release();
+    }
+
+    void invalidate(Slot<T> pooled) {
+        recordHold(pooled);
+        destroy(pooled);
+        permits.release();
+    }
+
+    private void recordHold(Slot<T> pooled) {
+        if (config.isMetricsEnabled()) {
+            metrics.holdNanos.record(System.nanoTime() - pooled.borrowedAtNanos());
+        }
+    }
+
+    private boolean reserveIdleSlot() {
+        int maxIdle = config.getMaxIdle();
+        int count;
+        do {
+            count = idleCount.get();
+            if (count >= maxIdle) {
+                return false;
+            }
+        } while (!idleCount.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    private void pushIdle(Node<T> node) {
+        Node<T> head;
+        do {
+            head = idleHead.get();
+            node.next = head;
+        } while (!idleHead.compareAndSet(head, node));
+    }
+
+    // 每次归还都新建 Node，不复用节点，因此不存在 ABA 问题
+    private Slot<T> pollIdle() {
+        while (true) {
+            Node<T> head = idleHead.get();
+            if (head == null) {
+                return null;
+            }
+            if (!idleHead.compareAndSet(head, head.next)) {
+                continue;
+            }
+            if (head.claim(Node.IDLE)) {
+                idleCount.decrementAndGet();
+                return head.pooled;
+            }
+            // 正在被维护线程校验：标记为已出栈，由维护线程校验完成后重新入栈
+            if (head.transfer(Node.VALIDATING, Node.ORPHANED)) {
+                continue;
+            }
+            // 校验刚好结束
+            if (head.claim(Node.IDLE)) {
+                idleCount.decrementAndGet();
+                return head.pooled;
+            }
+            // 已被回收的节点，直接丢弃
+        }
+    }
+
+    private void destroy(Slot<T> pooled) {
+        totalCount.decrementAndGet();
+        metrics.destroys.increment();
+        if (resources != null) {
+            resources.remove(pooled);
+        }
+        try {
+            factory.destroy(pooled.resource());
+        } catch (RuntimeException e) {
+            // 销毁失败不影响池的状态
+        }
+    }
+
+    private void drainIdle() {
+        Slot<T> pooled;
+        while ((pooled = pollIdle()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    // 并行创建 minIdle 个资源，预热线程在完成后退出
+    private void warmUp() {
+        int minIdle = config.getMinIdle();
+        if (minIdle == 0) {
+            ready.complete(null);
+            return;
+        }
+        int parallelism = Math.min(config.getWarmUpParallelism(), minIdle);
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "pool-" + config.getName() + "-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[minIdle];
+        for (int i = 0; i < minIdle; i++) {
+            tasks[i] = CompletableFuture.runAsync(this::addIdle, warmUpExecutor);
+        }
+        CompletableFuture.allOf(tasks).whenComplete((ignored, error) -> {
+            warmUpExecutor.shutdown();
+            if (error == null) {
+                ready.complete(null);
+            } else {
+                ready.completeExceptionally(error);
+            }
+        });
+    }
+
+    // 新建一个空闲资源；名额已满或池已关闭时放弃
+    private boolean addIdle() {
+        if (closed || !reserveTotal()) {
+            return false;
+        }
+        Slot<T> pooled = create();
+        idleCount.incrementAndGet();
+        pushIdle(new Node<>(pooled, clockNanos));
+        if (closed) {
+            drainIdle();
+        }
+        return true;
+    }
+
+    // 后台维护：从栈顶（最近使用）向栈底（最久未使用）遍历，同一时间只占用一个资源
+    private void maintain() {
+        if (resources != null) {
+            try {
+                detectLeaks();
+            } catch (RuntimeException e) {
+                // 资源的 toString() 等抛出异常时跳过这一轮检测，不影响后面的回收和补齐
+            }
+        }
+        try {
+            long now = System.nanoTime();
+            clockNanos = now;
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+            // minIdle 大于 maxIdle 时以 minIdle 为准，避免回收后又立即补齐
+            int keepIdle = Math.max(config.getMaxIdle(), config.getMinIdle());
+            Node<T> prev = null;
+            for (Node<T> node = idleHead.get(); node != null && !closed; node = node.next) {
+                if (now - node.idleSinceNanos >= idleTimeoutNanos && idleCount.get() > keepIdle
+                        && node.claim(Node.IDLE)) {
+                    idleCount.decrementAndGet();
+                    destroy(node.pooled);
+                } else if (node.transfer(Node.IDLE, Node.VALIDATING)) {
+                    validate(node);
+                }
+                // 摘除已出栈或已回收的节点；只有维护线程修改栈中间节点的 next，
+                // 并发出栈最多把栈顶指向一个被摘除的节点，出栈时会被跳过
+                if (node.isRemoved() && prev != null) {
+                    prev.next = node.next;
+                } else {
+                    prev = node;
+                }
+            }
+            while (!closed && idleCount.get() < config.getMinIdle() && addIdle()) {
+                // 补齐到 minIdle
+            }
+        } catch (RuntimeException e) {
+            // 创建失败等异常留到下一轮重试，不能让定时任务终止
+        }
+    }
+
+    private void validate(Node<T> node) {
+        boolean valid = isValid(node.pooled);
+        if (valid && node.transfer(Node.VALIDATING, Node.IDLE)) {
+            return;
+        }
+        if (valid) {
+            // 校验期间被借出线程弹出了栈，保留原来的空闲时间重新入栈
+            pushIdle(new Node<>(node.pooled, node.idleSinceNanos));
+            if (closed) {
+                drainIdle();
+            }
+            return;
+        }
+        node.transfer(Node.VALIDATING, Node.REMOVED);
+        idleCount.decrementAndGet();
+        destroy(node.pooled);
+    }
+
+    // 每次借出最多转换一次调用栈，之后只更新持有时间
+    private void detectLeaks() {
+        long now = System.nanoTime();
+        List<PoolMetrics.LeakReport> suspects = new ArrayList<>();
+        for (Slot<T> pooled : resources) {
+            if (!pooled.isBorrowed()) {
+                continue;
+            }
+            long borrowedAt = pooled.borrowedAtNanos();
+            long heldNanos = now - borrowedAt;
+            if (heldNanos < leakThresholdNanos) {
+                continue;
+            }
+            PoolMetrics.LeakReport report = pooled.leakReport();
+            Thread borrower = pooled.borrower();
+            StackTraceElement[] stackTrace;
+            if (report == null) {
+                metrics.leaks.increment();
+                stackTrace = pooled.borrowSite().getStackTrace();
+            } else {
+                stackTrace = report.getStackTrace();
+            }
+            report = new PoolMetrics.LeakReport(String.valueOf(pooled.resource()), borrower.getName(),
+                    TimeUnit.NANOSECONDS.toMillis(heldNanos), stackTrace);
+            // 生成报告期间可能已经归还，甚至被再次借出
+            if (pooled.isBorrowed() && pooled.borrowedAtNanos() == borrowedAt) {
+                pooled.leakReport(report);
+                suspects.add(report);
+            }
+        }
+        leakSuspects = Collections.unmodifiableList(suspects);
+    }
+
+    private boolean isValid(Slot<T> pooled) {
+        try {
+            return factory.validate(pooled.resource());
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("pool " + config.getName() + " is closed");
+        }
+    }
+
+    public ResourcePoolConfig getConfig() {
+        return config;
+    }
+
+    public int getActiveCount() {
+        return config.getMaxTotal() - permits.availablePermits();
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public int getTotalCount() {
+        return totalCount.get();
+    }
+
+    // 只读取原子变量，不会阻塞借出和归还
+    public PoolMetrics.Snapshot getMetrics() {
+        return new PoolMetrics.Snapshot(this, metrics, waitingCount.get(), leakSuspects);
+    }
+
+    // 关闭后不再借出；空闲资源立即销毁，借出中的资源在归还时销毁
+    @Override
+    public void close() {
+        closed = true;
+        if (maintainer != null) {
+            maintainer.shutdownNow();
+        }
+        drainIdle();
+    }
+
+    // 池中的一个资源及其借出状态，每个资源一个，借出时交给调用方的是一次性的 PooledResource 句柄
+    static final class Slot<T> {
+        private final T resource;
+        private volatile boolean borrowed;
+        // 以下字段在 markBorrowed() 之前写入，其他线程先读 borrowed 再读这些字段
+        private long borrowedAtNanos;
+        private Thread borrower;
+        // 借出位置，只在开启泄漏检测时记录
+        private Throwable borrowSite;
+        private volatile PoolMetrics.LeakReport leakReport;
+
+        Slot(T resource) {
+            this.resource = resource;
+        }
+
+        T resource() {
+            return resource;
+        }
+
+        void markBorrowed(long borrowedAtNanos, Thread borrower, Throwable borrowSite) {
+            this.borrowedAtNanos = borrowedAtNanos;
+            this.borrower = borrower;
+            this.borrowSite = borrowSite;
+            this.leakReport = null;
+            borrowed = true;
+        }
+
+        // 只由持有当前句柄的调用方在归还时调用一次
+        void markReturned() {
+            borrowed = false;
+        }
+
+        boolean isBorrowed() {
+            return borrowed;
+        }
+
+        long borrowedAtNanos() {
+            return borrowedAtNanos;
+        }
+
+        Thread borrower() {
+            return borrower;
+        }
+
+        Throwable borrowSite() {
+            return borrowSite;
+        }
+
+        PoolMetrics.LeakReport leakReport() {
+            return leakReport;
+        }
+
+        void leakReport(PoolMetrics.LeakReport leakReport) {
+            this.leakReport = leakReport;
+        }
+    }
+
+    private static final class Node<T> {
+        static final int IDLE = 0;
+        static final int VALIDATING = 1;
+        // 校验期间被借出线程弹出了栈
+        static final int ORPHANED = 2;
+        // 已借出或已回收
+        static final int REMOVED = 3;
+
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Node.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final Slot<T> pooled;
+        final long idleSinceNanos;
+        volatile Node<T> next;
+        private volatile int state;
+
+        Node(Slot<T> pooled, long idleSinceNanos) {
+            this.pooled = pooled;
+            this.idleSinceNanos = idleSinceNanos;
+        }
+
+        boolean claim(int expected) {
+            return transfer(expected, REMOVED);
+        }
+
+        boolean transfer(int expected, int target) {
+            return STATE.compareAndSet(this, expected, target);
+        }
+
+        boolean isRemoved() {
+            int current = state;
+            return current == REMOVED || current == ORPHANED;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.zelon.designpattern.creational.builder;
+
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+高线程数下 ResourcePool 与 synchronized + LinkedList 实现的资源池的吞吐对比：
+maxTotal = 16，每个线程循环 借出 -> 简单使用 -> 归还。
+同时对比开启和关闭 PoolMetrics 的开销。
+ */
+public class ResourcePoolBenchmark {
+    private static final int MAX_TOTAL = 16;
+    private static final int TOTAL_OPS = 4_000_000;
+
+    public static void main(String[] args) throws Exception {
+        ResourcePoolConfig config = new ResourcePoolConfig.Builder()
+                .setName("benchmark")
+                .setMaxTotal(MAX_TOTAL)
+                .setMaxIdle(MAX_TOTAL)
+                .setMetricsEnabled(false)
+                .build();
+        ResourcePoolConfig metricsConfig = new ResourcePoolConfig.Builder()
+                .setName("benchmark-metrics")
+                .setMaxTotal(MAX_TOTAL)
+                .setMaxIdle(MAX_TOTAL)
+                .setMetricsEnabled(true)
+                .build();
+        for (int threads : new int[]{4, 16, 64, 256}) {
+            // 预热
+            runLockFree(config, threads, TOTAL_OPS / 4);
+            runLockFree(metricsConfig, threads, TOTAL_OPS / 4);
+            runSynchronized(threads, TOTAL_OPS / 4);
+            double lockFree = runLockFree(config, threads, TOTAL_OPS);
+            double withMetrics = runLockFree(metricsConfig, threads, TOTAL_OPS);
+            double synced = runSynchronized(threads, TOTAL_OPS);
+            System.out.printf("threads=%-4d ResourcePool: %,12.0f ops/s   with metrics: %,12.0f ops/s   synchronized LinkedList: %,12.0f ops/s%n",
+                    threads, lockFree, withMetrics, synced);
+        }
+    }
+
+    private static double runLockFree(ResourcePoolConfig config, int threads, int totalOps) throws Exception {
+        try (ResourcePool<AtomicLong> pool = new ResourcePool<>(config, AtomicLong::new)) {
+            return measure(threads, totalOps, () -> {
+                try (PooledResource<AtomicLong> pooled = pool.borrow(1, TimeUnit.SECONDS)) {
+                    pooled.get().incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static double runSynchronized(int threads, int totalOps) throws Exception {
+        SynchronizedPool pool = new SynchronizedPool(MAX_TOTAL);
+        return measure(threads, totalOps, () -> {
+            AtomicLong resource = pool.borrow();
+            try {
+                resource.incrementAndGet();
+            } finally {
+                pool.release(resource);
+            }
+        });
+    }
+
+    private static double measure(int threads, int totalOps, Operation operation) throws InterruptedException {
+        int opsPerThread = totalOps / threads;
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < opsPerThread; i++) {
+                        operation.run();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return (double) opsPerThread * threads * 1_000_000_000L / elapsed;
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    // 传统实现：一把监视器锁保护 LinkedList，没有资源时 wait()
+    private static class SynchronizedPool {
+        private final LinkedList<AtomicLong> idle = new LinkedList<>();
+        private final int maxTotal;
+        private int total;
+
+        SynchronizedPool(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+
+        synchronized AtomicLong borrow() throws InterruptedException {
+            while (idle.isEmpty() && total >= maxTotal) {
+                wait();
+            }
+            if (!idle.isEmpty()) {
+                return idle.removeFirst();
+            }
+            total++;
+            return new AtomicLong();
+        }
+
+        synchronized void release(AtomicLong resource) {
+            idle.addFirst(resource);
+            notify();
+        }
+    }
+}
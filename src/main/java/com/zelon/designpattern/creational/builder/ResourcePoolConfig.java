@@ -23,6 +23,11 @@ public class ResourcePoolConfig {
     private int maxTotal;
     private int maxIdle;
     private int minIdle;
+    private long evictionIntervalMillis;
+    private long idleTimeoutMillis;
+    private int warmUpParallelism;
+    private boolean metricsEnabled;
+    private long leakDetectionThresholdMillis;
 
     public static void main(String[] args) {
         // 建造者模式创建对象
@@ -31,6 +36,9 @@ public class ResourcePoolConfig {
                 .setMaxTotal(16)
                 .setMaxIdle(8)
                 .setMinIdle(2)
+                .setEvictionIntervalMillis(30_000)
+                .setIdleTimeoutMillis(60_000)
+                .setWarmUpParallelism(2)
                 .build();
     }
 
@@ -39,6 +47,47 @@ public class ResourcePoolConfig {
         this.maxTotal = builder.maxTotal;
         this.maxIdle = builder.maxIdle;
         this.minIdle = builder.minIdle;
+        this.evictionIntervalMillis = builder.evictionIntervalMillis;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.warmUpParallelism = builder.warmUpParallelism;
+        this.metricsEnabled = builder.metricsEnabled;
+        this.leakDetectionThresholdMillis = builder.leakDetectionThresholdMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getWarmUpParallelism() {
+        return warmUpParallelism;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return leakDetectionThresholdMillis;
     }
 
     public static class Builder{
@@ -46,11 +95,24 @@ public class ResourcePoolConfig {
         private static final int DEFAULT_MAX_TOTAL = 8;
         private static final int DEFAULT_MAX_IDLE = 8;
         private static final int DEFAULT_MIN_IDLE = 0;
+        // 为 0 表示不启动后台维护线程，超过 maxIdle 的资源在归还时直接销毁；默认不启用，和没有这个选项之前的行为一致
+        private static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 0;
+        private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+        private static final int DEFAULT_WARM_UP_PARALLELISM = 1;
+        // 记录借出等待和持有时间的直方图大约让借出和归还的吞吐减半，默认关闭，排查池打满的问题时再开启
+        private static final boolean DEFAULT_METRICS_ENABLED = false;
+        // 为 0 表示不检测泄漏；开启后每次借出都记录一次借出位置
+        private static final long DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS = 0;
 
         private String name;
         private int maxTotal = DEFAULT_MAX_TOTAL;
         private int maxIdle = DEFAULT_MAX_IDLE;
         private int minIdle = DEFAULT_MIN_IDLE;
+        private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+        private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+        private int warmUpParallelism = DEFAULT_WARM_UP_PARALLELISM;
+        private boolean metricsEnabled = DEFAULT_METRICS_ENABLED;
+        private long leakDetectionThresholdMillis = DEFAULT_LEAK_DETECTION_THRESHOLD_MILLIS;
 
         public Builder(){}
 
@@ -70,6 +132,13 @@ public class ResourcePoolConfig {
             if (maxIdle > maxTotal) {
                 throw new IllegalArgumentException("maxIdle must be less than maxTotal");
             }
+            if (warmUpParallelism > maxTotal) {
+                throw new IllegalArgumentException("warmUpParallelism must be less than maxTotal");
+            }
+            // 泄漏检测由后台维护线程执行
+            if (leakDetectionThresholdMillis > 0 && evictionIntervalMillis == 0) {
+                throw new IllegalArgumentException("leak detection requires a positive evictionIntervalMillis");
+            }
             return new ResourcePoolConfig(this);
         }
 
@@ -104,6 +173,43 @@ public class ResourcePoolConfig {
             this.minIdle = minIdle;
             return this;
         }
+
+        public Builder setEvictionIntervalMillis(long evictionIntervalMillis){
+            if(evictionIntervalMillis < 0){
+                throw new IllegalArgumentException("evictionIntervalMillis must be non-negative");
+            }
+            this.evictionIntervalMillis = evictionIntervalMillis;
+            return this;
+        }
+
+        public Builder setIdleTimeoutMillis(long idleTimeoutMillis){
+            if(idleTimeoutMillis <= 0){
+                throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+            }
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        public Builder setWarmUpParallelism(int warmUpParallelism){
+            if(warmUpParallelism <= 0){
+                throw new IllegalArgumentException("warmUpParallelism must be positive");
+            }
+            this.warmUpParallelism = warmUpParallelism;
+            return this;
+        }
+
+        public Builder setMetricsEnabled(boolean metricsEnabled){
+            this.metricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        public Builder setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis){
+            if(leakDetectionThresholdMillis < 0){
+                throw new IllegalArgumentException("leakDetectionThresholdMillis must be non-negative");
+            }
+            this.leakDetectionThresholdMillis = leakDetectionThresholdMillis;
+            return this;
+        }
     }
 
 
@@ -0,0 +1,87 @@
+package com.zelon.designpattern.creational.singleton;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+分段预取的 ID 生成器：IdGenerator 每次 getId() 都对同一个 AtomicInteger 做一次原子自增，
+64 个线程同时取号时，这个缓存行会在各个核之间来回传递，成为竞争热点。
+这里每个线程一次性从全局计数器预留一段 ID（一次原子操作），之后在线程内部依次发放，不再写共享变量。
+1. 段大小自适应：预留得越频繁段越大，取号很慢时段缩小，减少线程退出时浪费的 ID
+2. 使用 long 类型，int 类型的 ID 很快就会溢出
+注意：ID 全局唯一，但不同线程之间不保证单调递增。
+ */
+public class BlockIdGenerator {
+    private static final int DEFAULT_MIN_BLOCK_SIZE = 16;
+    private static final int DEFAULT_MAX_BLOCK_SIZE = 1 << 16;
+    // 两次预留间隔小于这个值时段大小翻倍，大于 SHRINK_INTERVAL_NANOS 时减半
+    private static final long GROW_INTERVAL_NANOS = 1_000_000L;
+    private static final long SHRINK_INTERVAL_NANOS = 100_000_000L;
+
+    private static final BlockIdGenerator instance = new BlockIdGenerator(DEFAULT_MIN_BLOCK_SIZE, DEFAULT_MAX_BLOCK_SIZE);
+
+    private final AtomicLong counter = new AtomicLong(0);
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final ThreadLocal<Block> blocks;
+
+    public BlockIdGenerator(int minBlockSize, int maxBlockSize) {
+        if (minBlockSize <= 0) {
+            throw new IllegalArgumentException("minBlockSize must be positive");
+        }
+        if (maxBlockSize < minBlockSize) {
+            throw new IllegalArgumentException("maxBlockSize must not be less than minBlockSize");
+        }
+        this.minBlockSize = minBlockSize;
+        this.maxBlockSize = maxBlockSize;
+        this.blocks = ThreadLocal.withInitial(() -> new Block(minBlockSize));
+    }
+
+    public static BlockIdGenerator getInstance() {
+        return instance;
+    }
+
+    public long getId() {
+        Block block = blocks.get();
+        if (block.next == block.end) {
+            refill(block);
+        }
+        return ++block.next;
+    }
+
+    // 兼容 int 类型的调用方，超出 int 范围时抛出异常而不是静默溢出
+    public int getIntId() {
+        long id = getId();
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("id exceeds int range: " + id);
+        }
+        return (int) id;
+    }
+
+    private void refill(Block block) {
+        long now = System.nanoTime();
+        long interval = now - block.lastRefillNanos;
+        if (interval < GROW_INTERVAL_NANOS) {
+            block.size = Math.min(maxBlockSize, block.size * 2);
+        } else if (interval > SHRINK_INTERVAL_NANOS) {
+            block.size = Math.max(minBlockSize, block.size / 2);
+        }
+        block.lastRefillNanos = now;
+        // 预留 (start, start + size]，发放时先自增再返回，所以第一个 ID 是 1
+        long start = counter.getAndAdd(block.size);
+        block.next = start;
+        block.end = start + block.size;
+    }
+
+    private static class Block {
+        private long next;
+        private long end;
+        private int size;
+        private long lastRefillNanos;
+
+        Block(int size) {
+            this.size = size;
+            // 保证第一次预留时不会翻倍
+            this.lastRefillNanos = System.nanoTime() - GROW_INTERVAL_NANOS;
+        }
+    }
+}
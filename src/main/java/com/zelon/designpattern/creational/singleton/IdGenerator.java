@@ -30,6 +30,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 // 饿汉式
 public class IdGenerator {
     private AtomicInteger id = new AtomicInteger(0);
+    // 设置之后改为持久化计数，重启后不会重复发号
+    private volatile LeasedIdCounter leasedCounter;
     private static IdGenerator instance = new IdGenerator();
     private IdGenerator(){}
 
@@ -37,15 +39,34 @@ public class IdGenerator {
         return instance;
     }
 
+    public void enablePersistence(LeasedIdCounter leasedCounter){
+        this.leasedCounter = leasedCounter;
+    }
+
     public int getId(){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            return IdRange.toIntId(counter.nextId());
+        }
         return id.incrementAndGet();
     }
+
+    // 批量预留 n 个连续的 ID，只有一次原子操作
+    public IdRange reserve(int n){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            IdRange.checkSize(n);
+            return IdRange.ofIntIds(counter.reserve(n), n);
+        }
+        return IdRange.reserveInt(id, n);
+    }
 }
 
 // 懒汉式
 class IdGenerator2{
     private static volatile IdGenerator2 instance;
     private AtomicInteger id = new AtomicInteger(0);
+    private volatile LeasedIdCounter leasedCounter;
     private String config1;
     private String config2;
 
@@ -72,12 +93,54 @@ class IdGenerator2{
         }
         return instance;
     }
+
+    public void enablePersistence(LeasedIdCounter leasedCounter){
+        this.leasedCounter = leasedCounter;
+    }
+
+    public int getId(){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            return IdRange.toIntId(counter.nextId());
+        }
+        return id.incrementAndGet();
+    }
+
+    // 批量预留 n 个连续的 ID，只有一次原子操作
+    public IdRange reserve(int n){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            IdRange.checkSize(n);
+            return IdRange.ofIntIds(counter.reserve(n), n);
+        }
+        return IdRange.reserveInt(id, n);
+    }
 }
 
 enum IdGenerator3{
     INSTANCE;
     private AtomicInteger id = new AtomicInteger(0);
+    private volatile LeasedIdCounter leasedCounter;
+
+    public void enablePersistence(LeasedIdCounter leasedCounter){
+        this.leasedCounter = leasedCounter;
+    }
+
     public int getId(){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            return IdRange.toIntId(counter.nextId());
+        }
         return id.incrementAndGet();
     }
+
+    // 批量预留 n 个连续的 ID，只有一次原子操作
+    public IdRange reserve(int n){
+        LeasedIdCounter counter = leasedCounter;
+        if(counter != null){
+            IdRange.checkSize(n);
+            return IdRange.ofIntIds(counter.reserve(n), n);
+        }
+        return IdRange.reserveInt(id, n);
+    }
 }
\ No newline at end of file
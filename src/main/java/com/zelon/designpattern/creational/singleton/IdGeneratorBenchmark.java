@@ -0,0 +1,34 @@
+package com.zelon.designpattern.creational.singleton;
+
+/*
+ID 生成器竞争基准：1 到 64 个线程同时取号，对比 IdGenerator 的 AtomicInteger 自增和 BlockIdGenerator 的分段预取。
+ */
+public class IdGeneratorBenchmark {
+    private static final int IDS_PER_THREAD = 500_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        BlockIdGenerator blockIdGenerator = BlockIdGenerator.getInstance();
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            long atomic = run(threads, () -> IdGenerator.getInstance().getId());
+            long block = run(threads, blockIdGenerator::getId);
+            System.out.printf("threads=%-2d AtomicInteger: %,d ids/s, block: %,d ids/s%n", threads, atomic, block);
+        }
+    }
+
+    private static long run(int threads, Runnable getId) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    getId.run();
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (long) threads * IDS_PER_THREAD * 1_000_000_000L / (System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,87 @@
+package com.zelon.designpattern.creational.singleton;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/*
+一段连续的 ID [first, first + size)，批量导入时一次原子操作预留一整段，
+不返回装箱的 List<Long>，遍历和填充数组都不分配对象。
+ */
+public final class IdRange {
+    private final long first;
+    private final int size;
+
+    IdRange(long first, int size) {
+        this.first = first;
+        this.size = size;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return first + size - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+        }
+        return first + index;
+    }
+
+    // 把 ID 依次写入 dest[offset, offset + size)
+    public void fillInto(long[] dest, int offset) {
+        if (offset < 0 || offset + size > dest.length) {
+            throw new IndexOutOfBoundsException("dest is too small for " + size + " ids");
+        }
+        for (int i = 0; i < size; i++) {
+            dest[offset + i] = first + i;
+        }
+    }
+
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(first + i);
+        }
+    }
+
+    // 从 int 计数器中预留 n 个 ID：先检查溢出再推进计数器，溢出时计数器保持不变
+    static IdRange reserveInt(AtomicInteger counter, int n) {
+        checkSize(n);
+        while (true) {
+            int previous = counter.get();
+            if ((long) previous + n > Integer.MAX_VALUE) {
+                throw new IllegalStateException("id exceeds int range");
+            }
+            if (counter.compareAndSet(previous, previous + n)) {
+                return new IdRange((long) previous + 1, n);
+            }
+        }
+    }
+
+    // 持久化计数器已经预留好的 [first, first + n)，IdGenerator 系列对外发放 int，所以整段都要在 int 范围内
+    static IdRange ofIntIds(long first, int n) {
+        checkSize(n);
+        toIntId(first + n - 1);
+        return new IdRange(first, n);
+    }
+
+    static int toIntId(long id) {
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalStateException("id exceeds int range");
+        }
+        return (int) id;
+    }
+
+    static void checkSize(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive");
+        }
+    }
+}
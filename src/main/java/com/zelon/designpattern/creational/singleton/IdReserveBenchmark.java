@@ -0,0 +1,40 @@
+package com.zelon.designpattern.creational.singleton;
+
+/*
+批量预留的单个 ID 成本：4 个线程同时取号，批次大小从 1 到 10000，
+对比逐个调用 getId() 和 reserve(n) + fillInto()。
+ */
+public class IdReserveBenchmark {
+    private static final int THREADS = 4;
+    private static final int IDS_PER_THREAD = 2_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.printf("getId():        %.2f ns/id%n", run(1, false));
+        for (int batch = 1; batch <= 10_000; batch *= 10) {
+            System.out.printf("reserve(%-5d): %.2f ns/id%n", batch, run(batch, true));
+        }
+    }
+
+    private static double run(int batch, boolean reserve) throws InterruptedException {
+        Thread[] workers = new Thread[THREADS];
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                long[] ids = new long[batch];
+                IdGenerator2 generator = IdGenerator2.getInstance();
+                for (int i = 0; i < IDS_PER_THREAD; i += batch) {
+                    if (reserve) {
+                        generator.reserve(batch).fillInto(ids, 0);
+                    } else {
+                        ids[0] = generator.getId();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (double) (System.nanoTime() - start) / ((long) THREADS * IDS_PER_THREAD);
+    }
+}
@@ -0,0 +1,126 @@
+package com.zelon.designpattern.creational.singleton;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+持久化高水位的 ID 计数器：IdGenerator 系列的计数器只在内存中，重启后从 1 开始，会重复发放数据库中已有的 ID。
+1. 按租约（lease）批量预留 ID：每次租约把新的上界写入一个很小的内存映射文件，只是一次内存写，没有系统调用
+2. 租约范围内发号只做一次原子自增，没有任何 IO
+3. 重启时读出文件中的上界，从上界 + 1 继续发号，上次没发完的 ID 直接跳过；启动只需要映射一个 16 字节的文件
+4. 租约越大写文件越少，但重启时最多浪费 leaseSize 个 ID
+文件格式：8 字节 magic | 8 字节上界，打开时校验文件大小和内容，不是计数器文件时抛出 IOException。
+上界是对齐的 8 字节 long，一次写入不会被撕裂。写入映射内存就是写入操作系统的页缓存，
+进程崩溃后由操作系统写回磁盘，不会丢失；但 setRelease 只保证内存可见性的顺序，不保证落盘，
+forceOnLease 为 false 时整机掉电可能丢失最近的租约，重启后会重复发号；需要防止掉电时开启 forceOnLease，每次租约都 fsync。
+ */
+public class LeasedIdCounter {
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final long MAGIC = 0x4C45415345494453L;
+    private static final int BOUND_OFFSET = Long.BYTES;
+    private static final int FILE_SIZE = 2 * Long.BYTES;
+
+    private final MappedByteBuffer file;
+    private final int leaseSize;
+    private final boolean forceOnLease;
+    private final AtomicLong last;
+    private final ReentrantLock leaseLock = new ReentrantLock();
+    private volatile long leaseEnd;
+
+    private LeasedIdCounter(MappedByteBuffer file, int leaseSize, boolean forceOnLease) {
+        this.file = file;
+        this.leaseSize = leaseSize;
+        this.forceOnLease = forceOnLease;
+        long bound = (long) LONG_VIEW.getVolatile(file, BOUND_OFFSET);
+        this.last = new AtomicLong(bound);
+        this.leaseEnd = bound;
+    }
+
+    public static LeasedIdCounter open(Path path, int leaseSize, boolean forceOnLease) throws IOException {
+        if (leaseSize <= 0) {
+            throw new IllegalArgumentException("leaseSize must be positive");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size != 0 && size != FILE_SIZE) {
+                throw new IOException("invalid id counter file " + path + ": " + size + " bytes, expected " + FILE_SIZE);
+            }
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            if (size == 0) {
+                // 新文件：写入 magic 和初始上界并落盘，之后的租约只修改上界
+                LONG_VIEW.set(file, 0, MAGIC);
+                LONG_VIEW.set(file, BOUND_OFFSET, 0L);
+                file.force();
+            } else {
+                if ((long) LONG_VIEW.get(file, 0) != MAGIC) {
+                    throw new IOException("invalid id counter file " + path + ": bad magic");
+                }
+                if ((long) LONG_VIEW.get(file, BOUND_OFFSET) < 0) {
+                    throw new IOException("invalid id counter file " + path + ": negative bound");
+                }
+            }
+            return new LeasedIdCounter(file, leaseSize, forceOnLease);
+        }
+    }
+
+    public long nextId() {
+        long id = last.incrementAndGet();
+        if (id > leaseEnd) {
+            extendLease(id);
+        }
+        return id;
+    }
+
+    // 已经持久化的上界，重启后从它的下一个值开始发号
+    public long getLeaseEnd() {
+        return leaseEnd;
+    }
+
+    // 把当前租约上界强制刷到磁盘，forceOnLease 为 false 时可以在停机或检查点时调用
+    public void sync() {
+        leaseLock.lock();
+        try {
+            file.force();
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    // 保证 id 被租约覆盖之后才返回
+    void extendLease(long id) {
+        leaseLock.lock();
+        try {
+            long end = leaseEnd;
+            if (id <= end) {
+                return;
+            }
+            long newEnd = Math.max(end, id) + leaseSize;
+            LONG_VIEW.setRelease(file, BOUND_OFFSET, newEnd);
+            if (forceOnLease) {
+                file.force();
+            }
+            leaseEnd = newEnd;
+        } finally {
+            leaseLock.unlock();
+        }
+    }
+
+    // 一次原子操作取走 n 个连续的 ID，返回其中第一个
+    public long reserve(int n) {
+        IdRange.checkSize(n);
+        long first = last.getAndAdd(n) + 1;
+        long lastId = first + n - 1;
+        if (lastId > leaseEnd) {
+            extendLease(lastId);
+        }
+        return first;
+    }
+}
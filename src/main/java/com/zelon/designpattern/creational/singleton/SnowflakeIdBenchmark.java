@@ -0,0 +1,54 @@
+package com.zelon.designpattern.creational.singleton;
+
+import java.util.Arrays;
+
+/*
+雪花算法多线程唯一性与吞吐验证：1 到 64 个线程同时取号，
+所有 ID 合并排序后检查没有重复、且同一线程内严格递增，并输出每秒生成的 ID 数。
+12 位序号决定了单节点理论上限是每毫秒 4096 个，即每秒约 409 万个。
+ */
+public class SnowflakeIdBenchmark {
+    private static final int IDS_PER_THREAD = 200_000;
+    // 2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(EPOCH, 1);
+            long[][] ids = new long[threads][IDS_PER_THREAD];
+            Thread[] workers = new Thread[threads];
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                long[] local = ids[t];
+                workers[t] = new Thread(() -> {
+                    for (int i = 0; i < local.length; i++) {
+                        local[i] = generator.getId();
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long[] all = new long[threads * IDS_PER_THREAD];
+            for (int t = 0; t < threads; t++) {
+                for (int i = 1; i < IDS_PER_THREAD; i++) {
+                    if (ids[t][i] <= ids[t][i - 1]) {
+                        throw new IllegalStateException("ids are not increasing within a thread");
+                    }
+                }
+                System.arraycopy(ids[t], 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+            }
+            Arrays.sort(all);
+            for (int i = 1; i < all.length; i++) {
+                if (all[i] == all[i - 1]) {
+                    throw new IllegalStateException("duplicate id: " + all[i]);
+                }
+            }
+            System.out.printf("threads=%-2d %,d unique ids, %,d ids/s%n", threads, all.length,
+                    all.length * 1_000_000_000L / elapsed);
+        }
+    }
+}
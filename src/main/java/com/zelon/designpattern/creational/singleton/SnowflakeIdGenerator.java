@@ -0,0 +1,94 @@
+package com.zelon.designpattern.creational.singleton;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/*
+雪花算法 ID 生成器：IdGenerator 是单个 JVM 内的计数器，每次启动都从 0 开始，多个节点之间、重启前后都会重复。
+64 位 long 的结构：1 位符号位（始终为 0）| 41 位毫秒时间戳（相对 epoch）| 10 位节点 id | 12 位毫秒内序号
+1. 无锁：上一次的 (时间戳, 序号) 打包在一个 AtomicLong 中，通过 CAS 更新
+2. 时钟回拨：继续使用上一次的时间戳并借用它剩余的序号；回拨超过 maxBackwardMillis 时抛出异常
+3. 同一毫秒的 4096 个序号用完后，自旋等待下一毫秒；时钟回拨期间序号用完时，要等待的时间可能长达 maxBackwardMillis，
+   所以挂起线程直到时钟追上上一次的时间戳，而不是一直自旋占用 CPU
+ */
+public class SnowflakeIdGenerator {
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long MAX_TIMESTAMP = (1L << 41) - 1;
+    private static final long DEFAULT_MAX_BACKWARD_MILLIS = 5_000;
+
+    private final long epochMillis;
+    private final long workerId;
+    private final long maxBackwardMillis;
+    private final LongSupplier clock;
+    // 高位是上一次的相对时间戳，低 12 位是该时间戳下已经用掉的最大序号
+    private final AtomicLong last = new AtomicLong(-1L);
+
+    public SnowflakeIdGenerator(long epochMillis, long workerId) {
+        this(epochMillis, workerId, DEFAULT_MAX_BACKWARD_MILLIS, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long epochMillis, long workerId, long maxBackwardMillis, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId must be between 0 and " + MAX_WORKER_ID);
+        }
+        if (epochMillis < 0 || epochMillis > clock.getAsLong()) {
+            throw new IllegalArgumentException("epochMillis must not be in the future");
+        }
+        if (maxBackwardMillis < 0) {
+            throw new IllegalArgumentException("maxBackwardMillis must be non-negative");
+        }
+        this.epochMillis = epochMillis;
+        this.workerId = workerId;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.clock = clock;
+    }
+
+    public long getId() {
+        while (true) {
+            long now = clock.getAsLong() - epochMillis;
+            long previous = last.get();
+            long previousTimestamp = previous >> SEQUENCE_BITS;
+            long next;
+            if (now > previousTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // 同一毫秒或者时钟回拨：沿用上一次的时间戳，序号加一
+                if (previousTimestamp - now > maxBackwardMillis) {
+                    throw new IllegalStateException("clock moved backwards by " + (previousTimestamp - now) + "ms");
+                }
+                long sequence = previous & MAX_SEQUENCE;
+                if (sequence == MAX_SEQUENCE) {
+                    // 这一毫秒的序号用完了，等待时钟前进
+                    if (now == previousTimestamp) {
+                        Thread.onSpinWait();
+                    } else {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(previousTimestamp - now + 1));
+                    }
+                    continue;
+                }
+                next = previous + 1;
+            }
+            if (last.compareAndSet(previous, next)) {
+                long timestamp = next >> SEQUENCE_BITS;
+                if (timestamp > MAX_TIMESTAMP) {
+                    throw new IllegalStateException("timestamp overflow, epoch is too old");
+                }
+                return (timestamp << (WORKER_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | (next & MAX_SEQUENCE);
+            }
+        }
+    }
+
+    // 从 ID 中解析出的生成时间（毫秒）
+    public long getTimestampMillis(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + epochMillis;
+    }
+
+    public static long getWorkerId(long id) {
+        return (id >>> SEQUENCE_BITS) & MAX_WORKER_ID;
+    }
+}